@@ -0,0 +1,22 @@
+package com.wangp.design_pattern.pattern;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原子变量的小工具，各模式的统计项共用
+ */
+public final class Atomics {
+
+    private Atomics() {
+    }
+
+    /**
+     * 把 max 更新为 max 与 value 中较大的一个；value 不更大时只有一次读，不产生写竞争
+     */
+    public static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //重试
+        }
+    }
+}
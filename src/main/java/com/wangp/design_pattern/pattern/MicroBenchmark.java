@@ -0,0 +1,110 @@
+package com.wangp.design_pattern.pattern;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 简易微基准工具
+ *
+ * 各模式的性能对比 main 方法共用：先预热让 JIT 编译热点代码，再计时多轮取最好的一轮。
+ * 结果只用于同一台机器上的相对比较，不能代替 JMH 的严格测量。
+ */
+public final class MicroBenchmark {
+
+    /**
+     * 结果吸收槽，防止被测代码的返回值被 JIT 当成死代码消除
+     */
+    public static volatile Object sink;
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * 单线程测量，返回每次操作的纳秒数
+     * @param name 打印名称
+     * @param ops 每轮调用次数
+     * @param body 被测操作
+     * @return ns/op
+     */
+    public static double nsPerOp(String name, long ops, Runnable body) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            loop(ops, body);
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < MEASURE_ROUNDS; r++) {
+            best = Math.min(best, loop(ops, body));
+        }
+        double nsPerOp = (double) best / ops;
+        System.out.println(String.format("%-40s %12.2f ns/op", name, nsPerOp));
+        return nsPerOp;
+    }
+
+    /**
+     * 多线程测量，所有线程同时起跑，返回总吞吐（次/秒）
+     * @param name 打印名称
+     * @param threads 线程数
+     * @param opsPerThread 每个线程的调用次数
+     * @param body 被测操作
+     * @return ops/s
+     */
+    public static double throughput(String name, int threads, long opsPerThread, Runnable body) {
+        concurrentLoop(threads, opsPerThread / 10 + 1, body);
+        long elapsed = concurrentLoop(threads, opsPerThread, body);
+        double opsPerSecond = (double) threads * opsPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        System.out.println(String.format("%-40s %3d threads %14.0f ops/s", name, threads, opsPerSecond));
+        return opsPerSecond;
+    }
+
+    /**
+     * 多次 GC 之后的已用堆大小，用于比较两种写法的堆占用；被测对象需要在测量时保持可达（例如放进 sink）
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long loop(long ops, Runnable body) {
+        long start = System.nanoTime();
+        for (long i = 0; i < ops; i++) {
+            body.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long concurrentLoop(int threads, long opsPerThread, Runnable body) {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    loop(opsPerThread, body);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            done.await();
+            return System.nanoTime() - start;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("基准测试被中断", e);
+        }
+    }
+}
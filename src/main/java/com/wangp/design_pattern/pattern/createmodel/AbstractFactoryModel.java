@@ -1,5 +1,10 @@
 package com.wangp.design_pattern.pattern.createmodel;
 
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
 /**
  * 抽象工厂（AbstractFactory）模式
  *
@@ -27,6 +32,41 @@ package com.wangp.design_pattern.pattern.createmodel;
  * 3.系统中提供了产品的类库，且所有产品的接口相同，客户端不依赖产品实例的创建细节和内部结构。
  */
 public class AbstractFactoryModel {
+
+    /**
+     * 批量生产对比：逐个调用 newProduct1()/newProduct2() 与一次生产整批产品族。
+     * 计时期间把标准输出重定向到空流，只保留打印本身的开销，不刷屏
+     */
+    public static void main(String[] args) {
+        AbstractFatory factory = new ObjectFactory();
+        int families = 10_000;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            double perItem = MicroBenchmark.nsPerOp("逐个生产", 20, () -> {
+                Product1[] product1s = new Product1[families];
+                Product2[] product2s = new Product2[families];
+                for (int i = 0; i < families; i++) {
+                    product1s[i] = factory.newProduct1();
+                    product2s[i] = factory.newProduct2();
+                }
+                MicroBenchmark.sink = product2s;
+            });
+            double batch = MicroBenchmark.nsPerOp("批量生产", 20, () -> MicroBenchmark.sink = factory.newFamilies(families));
+            console.println(String.format("%d 组产品族  逐个生产 %.2f ms, 批量生产 %.2f ms",
+                    families, perItem / 1_000_000, batch / 1_000_000));
+        } finally {
+            System.setOut(console);
+        }
+    }
 }
 
 /**
@@ -35,6 +75,35 @@ public class AbstractFactoryModel {
 interface AbstractFatory{
     Product1 newProduct1();
     Product2 newProduct2();
+
+    /**
+     * 批量生产产品1，填满 out[offset, offset + length)。
+     * 默认逐个调用 newProduct1()，具体工厂可以覆盖为一次性的批量生产
+     */
+    default void newProduct1s(Product1[] out, int offset, int length){
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = newProduct1();
+        }
+    }
+
+    /**
+     * 批量生产产品2，填满 out[offset, offset + length)
+     */
+    default void newProduct2s(Product2[] out, int offset, int length){
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = newProduct2();
+        }
+    }
+
+    /**
+     * 批量生产 n 组配套的产品族
+     */
+    default ProductFamily newFamilies(int n){
+        ProductFamily family = new ProductFamily(n);
+        newProduct1s(family.product1s, 0, n);
+        newProduct2s(family.product2s, 0, n);
+        return family;
+    }
 }
 
 /**
@@ -53,6 +122,42 @@ class ObjectFactory implements AbstractFatory{
         System.out.println("具体工厂 ---> 生产product2");
         return new Product2();
     }
+
+    /**
+     * 整批只打印一次，循环内直接 new，不逐个打印也不经过接口调用
+     */
+    @Override
+    public void newProduct1s(Product1[] out, int offset, int length) {
+        System.out.println("具体工厂 ---> 批量生产product1 x " + length);
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = new Product1(false);
+        }
+    }
+
+    @Override
+    public void newProduct2s(Product2[] out, int offset, int length) {
+        System.out.println("具体工厂 ---> 批量生产product2 x " + length);
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = new Product2(false);
+        }
+    }
+}
+
+/**
+ * 产品族：下标相同的产品1和产品2配套使用
+ */
+class ProductFamily{
+    final Product1[] product1s;
+    final Product2[] product2s;
+
+    ProductFamily(int size){
+        product1s = new Product1[size];
+        product2s = new Product2[size];
+    }
+
+    int size(){
+        return product1s.length;
+    }
 }
 
 /**
@@ -60,12 +165,27 @@ class ObjectFactory implements AbstractFatory{
  */
 class Product1{
     Product1(){
-        System.out.println("产品1生产...");
+        this(true);
+    }
+
+    /**
+     * @param log 是否打印生产日志，批量生产时不逐个打印
+     */
+    Product1(boolean log){
+        if (log) {
+            System.out.println("产品1生产...");
+        }
     }
 }
 
 class Product2{
     Product2(){
-        System.out.println("产品2生产...");
+        this(true);
+    }
+
+    Product2(boolean log){
+        if (log) {
+            System.out.println("产品2生产...");
+        }
     }
 }
@@ -1,7 +1,25 @@
 package com.wangp.design_pattern.pattern.createmodel;
 
+import com.wangp.design_pattern.pattern.MicroBenchmark;
 import lombok.Data;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 /**
  * 建造者（Builder）模式
  *
@@ -30,6 +48,65 @@ import lombok.Data;
  * 创建复杂对象的算法独立于该对象的组成部分以及它们的装配方式，即产品的构建过程和最终的表示是独立的。
  */
 public class BuilderModel {
+
+    /**
+     * 并行建造演示：三个部件各耗时约 100ms，相互独立时并行建造总耗时约 100ms
+     */
+    public static void main(String[] args) {
+        Builder builder = new SlowBuilder(100);
+        long start = System.nanoTime();
+        new Director(builder).construct();
+        System.out.println("顺序建造耗时ms --> " + (System.nanoTime() - start) / 1_000_000);
+
+        ParallelDirector director = ParallelDirector.standard(builder, ForkJoinPool.commonPool());
+        director.constructFrozen().show();
+        director.printTimings();
+
+        measureAllocation();
+    }
+
+    /**
+     * 每次建造的分配字节数：每个产品新建建造者和指挥者，与从建造者池中建造
+     */
+    private static void measureAllocation() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        if (threads == null) {
+            System.out.println("当前 JVM 不支持按线程统计分配字节，跳过");
+            return;
+        }
+        long threadId = Thread.currentThread().getId();
+        BuilderPool pool = new BuilderPool(ConcreteBuilder::new, 8);
+        int ops = 1_000_000;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ops; i++) {
+                MicroBenchmark.sink = new Director(new ConcreteBuilder()).constructFrozen();
+            }
+            long perProduct = (threads.getThreadAllocatedBytes(threadId) - before) / ops;
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ops; i++) {
+                MicroBenchmark.sink = pool.constructFrozen();
+            }
+            long pooled = (threads.getThreadAllocatedBytes(threadId) - before) / ops;
+            System.out.println("每次建造分配字节  新建建造者 --> " + perProduct + ", 建造者池 --> " + pooled);
+        }
+    }
+
+    /**
+     * HotSpot 扩展的 ThreadMXBean 可以按线程统计分配字节；其他 JVM 或统计被关闭时返回 null
+     */
+    static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        return hotspot;
+    }
 }
 
 /**
@@ -45,6 +122,28 @@ class ProductRole{
     public void show(){
         System.out.println("产品建造完成..  ---> "+this.toString());
     }
+
+    /**
+     * 不可变快照：与当前各部件相同，之后对本对象的修改不会影响快照
+     */
+    public FrozenProductRole freeze(){
+        return new FrozenProductRole(getPartA(), getPartB(), getPartC());
+    }
+}
+
+/**
+ * 不可变的产品角色：
+ * 部件都是 final 字段，没有 setter，可以在线程间自由传递
+ */
+@Data
+final class FrozenProductRole{
+    private final String partA;
+    private final String partB;
+    private final String partC;
+
+    public void show(){
+        System.out.println("产品建造完成..  ---> "+this.toString());
+    }
 }
 
 /**
@@ -61,6 +160,22 @@ abstract class Builder{
     public ProductRole getResult(){
         return productRole;
     }
+
+    /**
+     * 清空已建造的部件，建造者可以开始建造下一个产品；不重新分配产品对象
+     */
+    public void reset(){
+        productRole.setPartA(null);
+        productRole.setPartB(null);
+        productRole.setPartC(null);
+    }
+
+    /**
+     * 返回当前产品的不可变快照，建造者之后 reset() 重用也不会影响已返回的快照
+     */
+    public FrozenProductRole snapshot(){
+        return productRole.freeze();
+    }
 }
 
 /**
@@ -102,4 +217,231 @@ class Director{
         builder.buildPartC();
         return builder.getResult();
     }
+
+    //从空的部件开始组装，返回新的不可变产品，同一个指挥者可以反复调用
+    public FrozenProductRole constructFrozen(){
+        builder.reset();
+        construct();
+        return builder.snapshot();
+    }
+}
+
+/**
+ * 并行指挥者：
+ * 按声明的依赖关系安排建造步骤，互不依赖的步骤在线程池中同时执行，全部完成后返回产品。
+ * 每一步的开始时间和耗时都会记录下来，用于找出决定总耗时的关键路径。
+ *
+ * 要求同时执行的步骤只修改产品的不同部件；步骤完成与依赖它的步骤开始之间、全部完成与返回产品之间，
+ * 由 CompletableFuture 保证可见性。
+ */
+class ParallelDirector{
+    private final Builder builder;
+    private final Executor executor;
+    private final DependencyGraph<String> graph = new DependencyGraph<>();
+    private final Map<String, Consumer<? super Builder>> steps = new HashMap<>();
+    private volatile List<StepTiming> lastTimings = Collections.emptyList();
+    private volatile long lastElapsedNanos;
+
+    public ParallelDirector(Builder builder, Executor executor){
+        this.builder = builder;
+        this.executor = executor;
+    }
+
+    /**
+     * partA、partB、partC 互不依赖
+     */
+    public static ParallelDirector standard(Builder builder, Executor executor){
+        return new ParallelDirector(builder, executor)
+                .step("partA", Builder::buildPartA)
+                .step("partB", Builder::buildPartB)
+                .step("partC", Builder::buildPartC);
+    }
+
+    /**
+     * 声明一个建造步骤
+     * @param name 步骤名
+     * @param action 步骤内容
+     * @param dependsOn 必须先完成的步骤
+     */
+    public ParallelDirector step(String name, Consumer<? super Builder> action, String... dependsOn){
+        graph.add(name, dependsOn);
+        steps.put(name, action);
+        return this;
+    }
+
+    //产品并行组装，返回不可变产品
+    public FrozenProductRole constructFrozen(){
+        builder.reset();
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        Map<String, StepTiming> timings = new ConcurrentHashMap<>();
+        long origin = System.nanoTime();
+        for (String name : graph.topologicalOrder()) {
+            Consumer<? super Builder> action = steps.get(name);
+            Runnable task = () -> {
+                long start = System.nanoTime();
+                action.accept(builder);
+                timings.put(name, new StepTiming(name, start - origin, System.nanoTime() - start));
+            };
+            List<String> deps = graph.dependenciesOf(name);
+            CompletableFuture<Void> future;
+            if (deps.isEmpty()) {
+                future = CompletableFuture.runAsync(task, executor);
+            } else {
+                CompletableFuture<?>[] depFutures = new CompletableFuture<?>[deps.size()];
+                for (int i = 0; i < depFutures.length; i++) {
+                    depFutures[i] = futures.get(deps.get(i));
+                }
+                future = CompletableFuture.allOf(depFutures).thenRunAsync(task, executor);
+            }
+            futures.put(name, future);
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        lastElapsedNanos = System.nanoTime() - origin;
+        List<StepTiming> ordered = new ArrayList<>(timings.values());
+        ordered.sort(Comparator.comparingLong(StepTiming::getStartNanos));
+        lastTimings = Collections.unmodifiableList(ordered);
+        return builder.snapshot();
+    }
+
+    /**
+     * 最近一次 constructFrozen() 各步骤的耗时，按开始时间排序
+     */
+    public List<StepTiming> lastTimings(){
+        return lastTimings;
+    }
+
+    /**
+     * 最近一次 constructFrozen() 的关键路径
+     */
+    public List<String> criticalPath(){
+        Map<String, Long> durations = new HashMap<>();
+        for (StepTiming timing : lastTimings) {
+            durations.put(timing.getName(), timing.getDurationNanos());
+        }
+        return graph.criticalPath(durations);
+    }
+
+    public void printTimings(){
+        for (StepTiming timing : lastTimings) {
+            System.out.println(String.format("步骤 %-10s 开始 %8.2f ms  耗时 %8.2f ms", timing.getName(),
+                    timing.getStartNanos() / 1e6, timing.getDurationNanos() / 1e6));
+        }
+        System.out.println(String.format("并行建造耗时 %.2f ms, 关键路径 %s", lastElapsedNanos / 1e6, criticalPath()));
+    }
+}
+
+/**
+ * 建造者池：
+ * 多个线程共享一组可重用的建造者（连同各自的指挥者），每次建造只分配最终的不可变产品。
+ * 取还都是对槽位的 CAS，没有锁也不分配节点；池中暂时没有空闲建造者时临时新建一个，归还时池满则丢弃。
+ */
+class BuilderPool{
+    private final Supplier<? extends Builder> builderFactory;
+    private final AtomicReferenceArray<Director> slots;
+    private final int mask;
+
+    /**
+     * @param builderFactory 建造者的创建方法
+     * @param capacity 池容量，向上取整为 2 的幂
+     */
+    public BuilderPool(Supplier<? extends Builder> builderFactory, int capacity){
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.builderFactory = builderFactory;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots.set(i, new Director(builderFactory.get()));
+        }
+    }
+
+    public FrozenProductRole constructFrozen(){
+        Director director = acquire();
+        try {
+            return director.constructFrozen();
+        } finally {
+            release(director);
+        }
+    }
+
+    private Director acquire(){
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= mask; i++) {
+            int index = (start + i) & mask;
+            Director director = slots.get(index);
+            if (director != null && slots.compareAndSet(index, director, null)) {
+                return director;
+            }
+        }
+        return new Director(builderFactory.get());
+    }
+
+    private void release(Director director){
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= mask; i++) {
+            int index = (start + i) & mask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, director)) {
+                return;
+            }
+        }
+    }
+}
+
+/**
+ * 建造步骤耗时
+ */
+@Data
+class StepTiming{
+    private final String name;
+    /**
+     * 相对 constructFrozen() 开始的时间
+     */
+    private final long startNanos;
+    private final long durationNanos;
+}
+
+/**
+ * 每个部件都要耗时建造的具体建造者，演示用
+ */
+class SlowBuilder extends ConcreteBuilder{
+    private final long millis;
+
+    SlowBuilder(long millis){
+        this.millis = millis;
+    }
+
+    @Override
+    public void buildPartA() {
+        pause();
+        super.buildPartA();
+    }
+
+    @Override
+    public void buildPartB() {
+        pause();
+        super.buildPartB();
+    }
+
+    @Override
+    public void buildPartC() {
+        pause();
+        super.buildPartC();
+    }
+
+    private void pause(){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
\ No newline at end of file
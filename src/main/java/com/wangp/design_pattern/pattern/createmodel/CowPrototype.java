@@ -0,0 +1,158 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * 写时复制（Copy-On-Write）原型
+ *
+ * 同一族原型的副本通常只修改一两个字段，其余的大块数据完全相同。
+ * 写时复制原型在复制时只做浅复制，大块数据放在 CowSlot 中由原型和副本共享，
+ * 谁先写某个 CowSlot，谁就在写之前把这一块复制一份给自己，没写过的部分始终共享。
+ * 这样一大族原型的堆占用和分配速率只和实际被修改的数据量有关。
+ *
+ * 与 RealizeType 一样，单个原型对象不是线程安全的；不同线程持有的不同副本可以各自并发读写。
+ */
+public class CowPrototype {
+
+    private static final int CLONES = 10_000;
+
+    /**
+     * 内存占用测试：对比深复制和写时复制下每个副本的保留字节数
+     */
+    public static void main(String[] args) {
+        CowRealizeType prototype = new CowRealizeType(4096);
+
+        Object[] deepCopies = new Object[CLONES];
+        long before = MicroBenchmark.usedHeap();
+        for (int i = 0; i < CLONES; i++) {
+            deepCopies[i] = prototype.cowClone().detach();
+        }
+        long deepBytes = MicroBenchmark.usedHeap() - before;
+        deepCopies = null;
+
+        CowRealizeType[] cowCopies = new CowRealizeType[CLONES];
+        before = MicroBenchmark.usedHeap();
+        for (int i = 0; i < CLONES; i++) {
+            CowRealizeType copy = prototype.cowClone();
+            copy.str = "Realize-" + i;
+            //每 100 个副本修改一次大块数据，只有这些副本会真正复制
+            if (i % 100 == 0) {
+                copy.setValue(0, i);
+            }
+            cowCopies[i] = copy;
+        }
+        long cowBytes = MicroBenchmark.usedHeap() - before;
+
+        System.out.println("深复制     每个副本保留字节 --> " + deepBytes / CLONES);
+        System.out.println("写时复制   每个副本保留字节 --> " + cowBytes / CLONES);
+        System.out.println("原型未被修改 --> " + (prototype.getValue(0) == 0 && cowCopies[100].getValue(0) == 100));
+    }
+}
+
+/**
+ * 写时复制槽：持有一块可能被多个原型共享的数据
+ * @param <T> 数据类型
+ */
+final class CowSlot<T> {
+    private final UnaryOperator<T> copier;
+    private T value;
+    /**
+     * 为 true 时该数据只属于当前槽，可以直接修改
+     */
+    private boolean owned;
+
+    CowSlot(T value, UnaryOperator<T> copier) {
+        this(value, copier, true);
+    }
+
+    private CowSlot(T value, UnaryOperator<T> copier, boolean owned) {
+        this.value = value;
+        this.copier = copier;
+        this.owned = owned;
+    }
+
+    /**
+     * 只读访问，调用方不得修改返回的数据
+     */
+    T read() {
+        return value;
+    }
+
+    /**
+     * 写访问：数据还在共享时先复制一份，之后返回当前槽独占的数据
+     */
+    T write() {
+        if (!owned) {
+            value = copier.apply(value);
+            owned = true;
+        }
+        return value;
+    }
+
+    /**
+     * 复制原型时调用：数据从此被两边共享，任何一边写之前都要先复制
+     */
+    CowSlot<T> share() {
+        owned = false;
+        return new CowSlot<>(value, copier, false);
+    }
+}
+
+/**
+ * 写时复制的具体原型：str 这类小字段随复制直接拷贝，大块数据放在 CowSlot 中共享
+ */
+class CowRealizeType implements Cloneable {
+
+    public String str;
+    private CowSlot<int[]> values;
+    private CowSlot<Map<String, String>> attributes;
+
+    CowRealizeType(int size) {
+        str = "Realize";
+        values = new CowSlot<>(new int[size], int[]::clone);
+        attributes = new CowSlot<>(new HashMap<>(), HashMap::new);
+    }
+
+    /**
+     * 写时复制：只复制对象本身，大块数据在写之前一直共享
+     */
+    public CowRealizeType cowClone() {
+        try {
+            CowRealizeType copy = (CowRealizeType) super.clone();
+            copy.values = values.share();
+            copy.attributes = attributes.share();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 立即复制所有共享数据，得到与深复制等价的独立副本
+     */
+    public CowRealizeType detach() {
+        values.write();
+        attributes.write();
+        return this;
+    }
+
+    public int getValue(int index) {
+        return values.read()[index];
+    }
+
+    public void setValue(int index, int value) {
+        values.write()[index] = value;
+    }
+
+    public String getAttribute(String key) {
+        return attributes.read().get(key);
+    }
+
+    public void setAttribute(String key, String value) {
+        attributes.write().put(key, value);
+    }
+}
@@ -0,0 +1,119 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 依赖图
+ *
+ * 记录节点之间的依赖关系，给出拓扑顺序和按耗时计算的关键路径，
+ * 供并行建造、并行初始化这类"先做依赖、无关的同时做"的场景使用。不是线程安全的，构建完成后再并发读取。
+ * @param <K> 节点类型
+ */
+final class DependencyGraph<K> {
+
+    private final Map<K, List<K>> dependencies = new LinkedHashMap<>();
+
+    /**
+     * 添加节点及其依赖，依赖的节点可以稍后再添加
+     */
+    @SafeVarargs
+    final void add(K node, K... dependsOn) {
+        if (dependencies.containsKey(node)) {
+            throw new IllegalStateException("节点重复添加: " + node);
+        }
+        //逐个复制，不把泛型可变参数数组再传给别的方法
+        List<K> deps = new ArrayList<>(dependsOn.length);
+        for (K dependency : dependsOn) {
+            deps.add(dependency);
+        }
+        dependencies.put(node, Collections.unmodifiableList(deps));
+    }
+
+    boolean contains(K node) {
+        return dependencies.containsKey(node);
+    }
+
+    Set<K> nodes() {
+        return Collections.unmodifiableSet(dependencies.keySet());
+    }
+
+    List<K> dependenciesOf(K node) {
+        List<K> deps = dependencies.get(node);
+        if (deps == null) {
+            throw new IllegalArgumentException("未知节点: " + node);
+        }
+        return deps;
+    }
+
+    /**
+     * 拓扑顺序：每个节点都排在它的依赖之后
+     * @throws IllegalStateException 存在循环依赖或依赖了未添加的节点
+     */
+    List<K> topologicalOrder() {
+        List<K> order = new ArrayList<>(dependencies.size());
+        Map<K, Boolean> visiting = new HashMap<>();
+        for (K node : dependencies.keySet()) {
+            visit(node, visiting, order, new ArrayList<>());
+        }
+        return order;
+    }
+
+    private void visit(K node, Map<K, Boolean> state, List<K> order, List<K> path) {
+        Boolean done = state.get(node);
+        if (Boolean.TRUE.equals(done)) {
+            return;
+        }
+        path.add(node);
+        if (Boolean.FALSE.equals(done)) {
+            throw new IllegalStateException("存在循环依赖: " + path);
+        }
+        List<K> deps = dependencies.get(node);
+        if (deps == null) {
+            throw new IllegalStateException("依赖了未添加的节点: " + path);
+        }
+        state.put(node, Boolean.FALSE);
+        for (K dep : deps) {
+            visit(dep, state, order, path);
+        }
+        state.put(node, Boolean.TRUE);
+        order.add(node);
+        path.remove(path.size() - 1);
+    }
+
+    /**
+     * 关键路径：沿依赖链累计耗时最长的一条路径，决定了全部完成所需的最短时间
+     * @param durations 每个节点的耗时，缺失的按 0 计
+     * @return 从最先开始的节点到最后完成的节点
+     */
+    List<K> criticalPath(Map<K, Long> durations) {
+        Map<K, Long> finish = new HashMap<>();
+        Map<K, K> previous = new HashMap<>();
+        K last = null;
+        for (K node : topologicalOrder()) {
+            long start = 0;
+            for (K dep : dependencies.get(node)) {
+                if (finish.get(dep) >= start) {
+                    start = finish.get(dep);
+                    previous.put(node, dep);
+                }
+            }
+            long end = start + durations.getOrDefault(node, 0L);
+            finish.put(node, end);
+            if (last == null || end > finish.get(last)) {
+                last = node;
+            }
+        }
+        List<K> path = new ArrayList<>();
+        for (K node = last; node != null; node = previous.get(node)) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
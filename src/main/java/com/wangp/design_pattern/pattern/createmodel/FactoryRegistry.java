@@ -0,0 +1,149 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 工厂登记表
+ *
+ * 工厂方法模式的拓展：按键在运行时选择具体工厂，调用方不必自己 new ConcreteFactory1/ConcreteFactory2。
+ * 按产品类型登记时，产品的构造函数在登记时经 LambdaMetafactory 编译成一个 Supplier，
+ * 之后每次创建就是一次普通的接口调用加 new，不再走反射。
+ * 没有实例字段的产品（如 ConcreteProduct1）是无状态的，登记时只创建一次，之后一直返回同一个实例。
+ */
+public class FactoryRegistry {
+
+    private final Map<String, AbstractFactory> factories = new ConcurrentHashMap<>();
+
+    /**
+     * 登记已有的具体工厂
+     */
+    public void register(String key, AbstractFactory factory) {
+        if (factories.putIfAbsent(key, factory) != null) {
+            throw new IllegalStateException("工厂重复登记: " + key);
+        }
+    }
+
+    /**
+     * 按产品类型登记，产品类需要有本包可访问的无参构造
+     */
+    public void register(String key, Class<? extends Product> productType) {
+        register(key, productType, MethodHandles.lookup());
+    }
+
+    /**
+     * 按产品类型登记
+     * @param lookup 对产品构造函数有访问权限的 Lookup，产品不在本包时由调用方传入 MethodHandles.lookup()
+     */
+    public void register(String key, Class<? extends Product> productType, MethodHandles.Lookup lookup) {
+        Supplier<? extends Product> constructor = compileConstructor(productType, lookup);
+        if (isStateless(productType)) {
+            Product shared = constructor.get();
+            register(key, () -> shared);
+        } else {
+            register(key, constructor::get);
+        }
+    }
+
+    /**
+     * 按键取工厂
+     */
+    public AbstractFactory factory(String key) {
+        AbstractFactory factory = factories.get(key);
+        if (factory == null) {
+            throw new IllegalArgumentException("工厂未登记: " + key);
+        }
+        return factory;
+    }
+
+    /**
+     * 按键创建产品
+     */
+    public Product newProduct(String key) {
+        return factory(key).newProduct();
+    }
+
+    /**
+     * 把无参构造函数绑定成 Supplier
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> compileConstructor(Class<T> type, MethodHandles.Lookup lookup) {
+        try {
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    constructor,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("无法绑定构造函数: " + type.getName(), e);
+        }
+    }
+
+    /**
+     * 整个继承链上都没有实例字段的类视为无状态
+     */
+    static boolean isStateless(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 性能对比：直接 new、反射创建、登记表创建
+     */
+    public static void main(String[] args) throws ReflectiveOperationException {
+        FactoryRegistry registry = new FactoryRegistry();
+        registry.register("product1", ConcreteProduct1.class);
+        registry.register("stateful", StatefulProduct.class);
+        System.out.println("无状态产品被缓存 --> " + (registry.newProduct("product1") == registry.newProduct("product1")));
+        System.out.println("有状态产品每次新建 --> " + (registry.newProduct("stateful") != registry.newProduct("stateful")));
+
+        Constructor<StatefulProduct> reflective = StatefulProduct.class.getDeclaredConstructor();
+        long ops = 5_000_000;
+        MicroBenchmark.nsPerOp("new StatefulProduct()", ops, () -> MicroBenchmark.sink = new StatefulProduct());
+        MicroBenchmark.nsPerOp("Constructor.newInstance()", ops, () -> {
+            try {
+                MicroBenchmark.sink = reflective.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        MicroBenchmark.nsPerOp("registry.newProduct(\"stateful\")", ops,
+                () -> MicroBenchmark.sink = registry.newProduct("stateful"));
+        MicroBenchmark.nsPerOp("registry.newProduct(\"product1\")", ops,
+                () -> MicroBenchmark.sink = registry.newProduct("product1"));
+    }
+}
+
+/**
+ * 有状态的具体产品，每次都要新建
+ */
+class StatefulProduct implements Product {
+
+    private int shows;
+
+    @Override
+    public void show() {
+        System.out.println("有状态产品展示...." + (++shows));
+    }
+}
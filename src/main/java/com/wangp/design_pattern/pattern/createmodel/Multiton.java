@@ -0,0 +1,162 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * 有限多例（Multiton）模式
+ *
+ * 单例模式的拓展：一个类只保留固定个数的实例，由类自己创建和分配。
+ * 这里按 CPU 条带划分实例，每个线程固定落在其中一个条带上，
+ * 计数器、缓冲区这类可变的共享状态就分散到多个实例上，不会让所有 CPU 争抢同一条缓存行。
+ * 读取时把所有条带合并，思路与 LongAdder 相同。
+ *
+ * 条带个数取不小于 CPU 核数的 2 的幂，线程按首次访问的先后轮流分配条带。
+ * @param <T> 实例类型
+ */
+public class Multiton<T> {
+
+    private static final AtomicInteger NEXT_STRIPE = new AtomicInteger();
+    private static final ThreadLocal<int[]> THREAD_STRIPE =
+            ThreadLocal.withInitial(() -> new int[]{NEXT_STRIPE.getAndIncrement()});
+
+    private final Object[] instances;
+    private final int mask;
+
+    /**
+     * 按 CPU 核数确定条带个数
+     * @param supplier 实例的创建方法
+     */
+    public Multiton(Supplier<? extends T> supplier) {
+        this(Runtime.getRuntime().availableProcessors(), supplier);
+    }
+
+    /**
+     * @param stripes 期望的条带个数，向上取整为 2 的幂
+     * @param supplier 实例的创建方法
+     */
+    public Multiton(int stripes, Supplier<? extends T> supplier) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("条带个数必须大于0: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.instances = new Object[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            instances[i] = supplier.get();
+        }
+    }
+
+    /**
+     * 当前线程对应的实例
+     */
+    public T get() {
+        return get(THREAD_STRIPE.get()[0]);
+    }
+
+    /**
+     * 第 index 个条带的实例，index 超出范围时按条带个数取模
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) instances[index & mask];
+    }
+
+    /**
+     * 条带个数
+     */
+    public int size() {
+        return instances.length;
+    }
+
+    public void forEach(Consumer<? super T> action) {
+        for (int i = 0; i < instances.length; i++) {
+            action.accept(get(i));
+        }
+    }
+
+    /**
+     * 合并所有条带
+     * @param identity 初始值
+     * @param accumulator 合并方法
+     */
+    public <R> R reduce(R identity, BiFunction<R, ? super T, R> accumulator) {
+        R result = identity;
+        for (int i = 0; i < instances.length; i++) {
+            result = accumulator.apply(result, get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 合并所有条带的数值，读取期间其他线程的写入可能只被部分计入
+     */
+    public long sum(ToLongFunction<? super T> mapper) {
+        long sum = 0;
+        for (int i = 0; i < instances.length; i++) {
+            sum += mapper.applyAsLong(get(i));
+        }
+        return sum;
+    }
+
+    /**
+     * 吞吐对比：所有线程累加同一个单例持有的计数器，与按条带分散累加
+     */
+    public static void main(String[] args) {
+        AtomicLong single = new AtomicLong();
+        Multiton<PaddedCounter> striped = new Multiton<>(PaddedCounter::new);
+        long ops = 2_000_000;
+        for (int threads : new int[]{1, 8, 64}) {
+            MicroBenchmark.throughput("单例计数器", threads, ops, single::incrementAndGet);
+            MicroBenchmark.throughput("多例条带计数器", threads, ops, () -> striped.get().increment());
+        }
+        System.out.println("条带个数 --> " + striped.size());
+        System.out.println("单例计数 --> " + single.get() + ", 条带合并计数 --> " + striped.sum(PaddedCounter::get));
+    }
+}
+
+/**
+ * 计数器左侧填充，和右侧填充一起把 value 隔离在独占的缓存行里
+ */
+abstract class CounterLhsPadding {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class CounterValue extends CounterLhsPadding {
+    volatile long value;
+}
+
+abstract class CounterRhsPadding extends CounterValue {
+    long p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * 条带计数器：多例中的每个实例各占一条缓存行，相邻条带之间没有伪共享
+ */
+class PaddedCounter extends CounterRhsPadding {
+
+    private static final AtomicLongFieldUpdater<CounterValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(CounterValue.class, "value");
+
+    public void increment() {
+        VALUE.incrementAndGet(this);
+    }
+
+    public void add(long delta) {
+        VALUE.addAndGet(this, delta);
+    }
+
+    public long get() {
+        return value;
+    }
+}
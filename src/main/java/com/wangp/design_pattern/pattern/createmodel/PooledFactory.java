@@ -0,0 +1,268 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 池化的抽象工厂
+ *
+ * 包装一个具体工厂，newProduct1()/newProduct2() 优先从池中取出已用完归还的产品，池中没有时才交给被包装的工厂生产。
+ * 产品用完后由调用方显式 release() 归还。
+ *
+ * 池分两层：每个线程有一个容量有限的本地缓存，取还都不需要同步；本地缓存满了再放入共享的溢出池，
+ * 溢出池也满了就丢弃交给 GC。通过本地容量、共享容量和命中率统计，可以在分配速率与内存占用之间取舍。
+ *
+ * 开启泄漏检测后，每个借出的产品都会被弱引用跟踪，产品没有归还就被 GC 回收时记为一次泄漏，
+ * 借出位置交给调用方提供的监听器处理（记录日志、上报等），工厂本身不做输出。
+ * 泄漏检测按产品的 equals/hashCode 查找借出记录，适用于未重写这两个方法的产品（如 Product1、Product2）。
+ */
+public class PooledFactory implements AbstractFatory {
+
+    private final ObjectPool<Product1> product1Pool;
+    private final ObjectPool<Product2> product2Pool;
+
+    public PooledFactory(AbstractFatory delegate) {
+        this(delegate, 64, 1024, false);
+    }
+
+    /**
+     * @param delegate 池中没有可用产品时负责生产的工厂
+     * @param localCapacity 每个线程本地缓存的容量
+     * @param sharedCapacity 共享溢出池的容量
+     * @param leakDetection 是否开启泄漏检测
+     */
+    public PooledFactory(AbstractFatory delegate, int localCapacity, int sharedCapacity, boolean leakDetection) {
+        this(delegate, localCapacity, sharedCapacity, leakDetection ? (pool, site) -> { } : null);
+    }
+
+    /**
+     * @param delegate 池中没有可用产品时负责生产的工厂
+     * @param localCapacity 每个线程本地缓存的容量
+     * @param sharedCapacity 共享溢出池的容量
+     * @param leakListener 泄漏监听器，参数为池名和记录借出位置的 Throwable；为 null 时不开启泄漏检测
+     */
+    public PooledFactory(AbstractFatory delegate, int localCapacity, int sharedCapacity,
+                         BiConsumer<String, Throwable> leakListener) {
+        this.product1Pool = new ObjectPool<>("product1", delegate::newProduct1, localCapacity, sharedCapacity, leakListener);
+        this.product2Pool = new ObjectPool<>("product2", delegate::newProduct2, localCapacity, sharedCapacity, leakListener);
+    }
+
+    @Override
+    public Product1 newProduct1() {
+        return product1Pool.acquire();
+    }
+
+    @Override
+    public Product2 newProduct2() {
+        return product2Pool.acquire();
+    }
+
+    public void release(Product1 product) {
+        product1Pool.release(product);
+    }
+
+    public void release(Product2 product) {
+        product2Pool.release(product);
+    }
+
+    public double product1HitRate() {
+        return product1Pool.hitRate();
+    }
+
+    public double product2HitRate() {
+        return product2Pool.hitRate();
+    }
+
+    /**
+     * 检测到的泄漏总数，未开启泄漏检测时恒为 0
+     */
+    public long leaks() {
+        return product1Pool.leaks() + product2Pool.leaks();
+    }
+
+    @Override
+    public String toString() {
+        return "PooledFactory{" + product1Pool + ", " + product2Pool + "}";
+    }
+
+    public static void main(String[] args) {
+        PooledFactory factory = new PooledFactory(new ObjectFactory(), 4, 16, (pool, site) -> {
+            System.out.println(pool + " 泄漏：借出后未归还即被回收，借出位置如下");
+            site.printStackTrace(System.out);
+        });
+        for (int i = 0; i < 10; i++) {
+            Product1 product1 = factory.newProduct1();
+            Product2 product2 = factory.newProduct2();
+            factory.release(product1);
+            factory.release(product2);
+        }
+        //借出后不归还，制造一次泄漏
+        factory.newProduct1();
+        factory.newProduct1();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            factory.release(factory.newProduct1());
+        }
+        System.out.println(factory);
+    }
+}
+
+/**
+ * 两级对象池：线程本地缓存 + 共享溢出池
+ * @param <T> 池化对象类型
+ */
+class ObjectPool<T> {
+
+    private final String name;
+    private final Supplier<? extends T> creator;
+    private final int localCapacity;
+    private final int sharedCapacity;
+    private final ThreadLocal<ArrayDeque<T>> local = ThreadLocal.withInitial(ArrayDeque::new);
+    private final Queue<T> shared = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sharedSize = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    private final LeakTracker<T> leakTracker;
+
+    /**
+     * @param leakListener 泄漏监听器，为 null 时不开启泄漏检测
+     */
+    ObjectPool(String name, Supplier<? extends T> creator, int localCapacity, int sharedCapacity,
+               BiConsumer<String, Throwable> leakListener) {
+        this.name = name;
+        this.creator = creator;
+        this.localCapacity = localCapacity;
+        this.sharedCapacity = sharedCapacity;
+        this.leakTracker = leakListener != null ? new LeakTracker<>(name, leakListener) : null;
+    }
+
+    T acquire() {
+        T object = local.get().pollLast();
+        if (object == null) {
+            object = shared.poll();
+            if (object != null) {
+                sharedSize.decrementAndGet();
+            }
+        }
+        if (object != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            object = creator.get();
+        }
+        if (leakTracker != null) {
+            leaks.add(leakTracker.expungeLeaks());
+            leakTracker.track(object);
+        }
+        return object;
+    }
+
+    void release(T object) {
+        if (object == null) {
+            throw new IllegalArgumentException("归还对象不能为空");
+        }
+        if (leakTracker != null && !leakTracker.untrack(object)) {
+            throw new IllegalStateException(name + " 重复归还或归还了不属于本池的对象");
+        }
+        ArrayDeque<T> cache = local.get();
+        if (cache.size() < localCapacity) {
+            cache.addLast(object);
+        } else if (sharedSize.incrementAndGet() <= sharedCapacity) {
+            shared.offer(object);
+        } else {
+            sharedSize.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    long leaks() {
+        return leaks.sum();
+    }
+
+    /**
+     * 命中率：从池中取到的次数 / 总借出次数
+     */
+    double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{hits=%d, misses=%d, hitRate=%.2f, dropped=%d, leaks=%d}",
+                name, hits.sum(), misses.sum(), hitRate(), dropped.sum(), leaks.sum());
+    }
+
+    /**
+     * 泄漏跟踪：借出时登记弱引用，归还时注销；被 GC 回收时仍未注销的就是泄漏
+     */
+    private static final class LeakTracker<T> {
+        private final String name;
+        private final BiConsumer<String, Throwable> listener;
+        private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+        private final Set<LeakRef<T>> outstanding = ConcurrentHashMap.newKeySet();
+        private final Map<T, LeakRef<T>> byObject = Collections.synchronizedMap(new WeakHashMap<>());
+
+        LeakTracker(String name, BiConsumer<String, Throwable> listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+
+        void track(T object) {
+            LeakRef<T> ref = new LeakRef<>(object, collected);
+            outstanding.add(ref);
+            byObject.put(object, ref);
+        }
+
+        boolean untrack(T object) {
+            LeakRef<T> ref = byObject.remove(object);
+            if (ref == null) {
+                return false;
+            }
+            outstanding.remove(ref);
+            ref.clear();
+            return true;
+        }
+
+        /**
+         * 取出已被回收的未归还对象，逐个通知监听器
+         * @return 本次发现的泄漏数
+         */
+        int expungeLeaks() {
+            int count = 0;
+            Object ref;
+            while ((ref = collected.poll()) != null) {
+                if (outstanding.remove(ref)) {
+                    count++;
+                    listener.accept(name, ((LeakRef<?>) ref).site);
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class LeakRef<T> extends WeakReference<T> {
+        private final Throwable site = new Throwable("借出位置");
+
+        LeakRef(T referent, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+        }
+    }
+}
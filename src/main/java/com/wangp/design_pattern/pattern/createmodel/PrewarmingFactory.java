@@ -0,0 +1,279 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.Atomics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预热工厂
+ *
+ * 包装一个生产较慢的具体工厂，在后台始终预先生产好若干个产品放在有界队列中，
+ * 调用方取产品时优先从队列中拿，拿走一个后台就补一个。
+ * newProductAsync() 返回 CompletableFuture，队列为空时在线程池中生产，不阻塞调用线程。
+ *
+ * 背压：预热队列有界，后台同一时刻只有一条补货链，队列满了就停止生产，
+ * 所以预生产的产品最多 warmCount 个，不会无限占用内存。
+ * 补货每个任务只生产一个产品，再把下一个任务重新提交到线程池，未命中的异步生产最多只需排在一个补货任务之后；
+ * 同时在途的未命中生产有上限，超过时返回以 RejectedExecutionException 失败的 future。
+ * 补货时生产失败会记录下来，按指数退避后重试。
+ * 统计项包括队列深度、命中/未命中/拒绝次数、补货失败次数、调用方等待产品的平均和最长时间。
+ */
+public class PrewarmingFactory implements AbstractFactory, AutoCloseable {
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AbstractFactory delegate;
+    private final Executor executor;
+    private final BlockingQueue<Product> warm;
+    private final int maxPendingMisses;
+    private final AtomicInteger pendingMisses = new AtomicInteger();
+    private final ScheduledThreadPoolExecutor backoffTimer;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile boolean closed;
+    /**
+     * 只由持有 refilling 标志的补货链读写
+     */
+    private long backoffNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejectedMisses = new LongAdder();
+    private final LongAdder refillFailures = new LongAdder();
+    private volatile Throwable lastRefillFailure;
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param delegate 实际生产产品的工厂
+     * @param warmCount 预热产品个数
+     * @param executor 后台补货和异步生产使用的线程池
+     */
+    public PrewarmingFactory(AbstractFactory delegate, int warmCount, Executor executor) {
+        this(delegate, warmCount, warmCount, executor);
+    }
+
+    /**
+     * @param delegate 实际生产产品的工厂
+     * @param warmCount 预热产品个数
+     * @param maxPendingMisses 同时在线程池中生产的未命中产品的上限
+     * @param executor 后台补货和异步生产使用的线程池
+     */
+    public PrewarmingFactory(AbstractFactory delegate, int warmCount, int maxPendingMisses, Executor executor) {
+        if (warmCount < 1) {
+            throw new IllegalArgumentException("预热个数必须大于0: " + warmCount);
+        }
+        if (maxPendingMisses < 1) {
+            throw new IllegalArgumentException("未命中生产上限必须大于0: " + maxPendingMisses);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.warm = new ArrayBlockingQueue<>(warmCount);
+        this.maxPendingMisses = maxPendingMisses;
+        this.backoffTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "prewarming-backoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRefill();
+    }
+
+    /**
+     * 同步取产品：队列为空时在调用线程中生产
+     */
+    @Override
+    public Product newProduct() {
+        Product product = warm.poll();
+        if (product != null) {
+            hits.increment();
+            recordWait(0);
+        } else {
+            misses.increment();
+            long start = System.nanoTime();
+            product = delegate.newProduct();
+            recordWait(System.nanoTime() - start);
+        }
+        scheduleRefill();
+        return product;
+    }
+
+    /**
+     * 异步取产品：命中时返回已完成的 future，否则交给线程池生产；
+     * 在途的未命中生产已达上限时返回以 RejectedExecutionException 失败的 future
+     */
+    public CompletableFuture<Product> newProductAsync() {
+        Product product = warm.poll();
+        CompletableFuture<Product> future;
+        if (product != null) {
+            hits.increment();
+            recordWait(0);
+            future = CompletableFuture.completedFuture(product);
+        } else if (pendingMisses.incrementAndGet() > maxPendingMisses) {
+            pendingMisses.decrementAndGet();
+            rejectedMisses.increment();
+            future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("未命中的异步生产已达上限: " + maxPendingMisses));
+        } else {
+            misses.increment();
+            long start = System.nanoTime();
+            try {
+                future = CompletableFuture.supplyAsync(delegate::newProduct, executor)
+                        .whenComplete((p, e) -> {
+                            pendingMisses.decrementAndGet();
+                            recordWait(System.nanoTime() - start);
+                        });
+            } catch (RejectedExecutionException e) {
+                pendingMisses.decrementAndGet();
+                throw e;
+            }
+        }
+        scheduleRefill();
+        return future;
+    }
+
+    /**
+     * 只要队列没满且没有补货链在跑，就开始一条补货链
+     */
+    private void scheduleRefill() {
+        if (!closed && warm.remainingCapacity() > 0 && refilling.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::refillOne);
+            } catch (RuntimeException e) {
+                refilling.set(false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 补货链的一步：生产一个产品放入队列，再把下一步提交到线程池，让排在后面的未命中生产先执行
+     */
+    private void refillOne() {
+        if (closed || warm.remainingCapacity() == 0) {
+            refilling.set(false);
+            //补货结束到标志复位之间可能又被取走了产品
+            scheduleRefill();
+            return;
+        }
+        try {
+            warm.offer(delegate.newProduct());
+            backoffNanos = 0;
+        } catch (Throwable e) {
+            refillFailures.increment();
+            lastRefillFailure = e;
+            backoffNanos = backoffNanos == 0 ? MIN_BACKOFF_NANOS : Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+            try {
+                backoffTimer.schedule(this::continueRefill, backoffNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException closing) {
+                refilling.set(false);
+            }
+            return;
+        }
+        continueRefill();
+    }
+
+    private void continueRefill() {
+        try {
+            executor.execute(this::refillOne);
+        } catch (RuntimeException e) {
+            //线程池已关闭或拒绝，补货链到此结束，下一次取产品时再尝试
+            lastRefillFailure = e;
+            refilling.set(false);
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waits.increment();
+        totalWaitNanos.add(nanos);
+        Atomics.updateMax(maxWaitNanos, nanos);
+    }
+
+    public int queueDepth() {
+        return warm.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long rejectedMisses() {
+        return rejectedMisses.sum();
+    }
+
+    public long refillFailures() {
+        return refillFailures.sum();
+    }
+
+    /**
+     * @return 最近一次补货失败的原因，没有失败过时返回 null
+     */
+    public Throwable lastRefillFailure() {
+        return lastRefillFailure;
+    }
+
+    public double averageWaitNanos() {
+        long count = waits.sum();
+        return count == 0 ? 0 : (double) totalWaitNanos.sum() / count;
+    }
+
+    public long maxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * 停止补货并丢弃预热的产品
+     */
+    @Override
+    public void close() {
+        closed = true;
+        backoffTimer.shutdownNow();
+        warm.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PrewarmingFactory{queueDepth=%d, hits=%d, misses=%d, rejected=%d, refillFailures=%d, avgWait=%.2fms, maxWait=%.2fms}",
+                queueDepth(), hits(), misses(), rejectedMisses(), refillFailures(), averageWaitNanos() / 1e6, maxWaitNanos() / 1e6);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        AbstractFactory slowFactory = () -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ConcreteProduct1();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (PrewarmingFactory factory = new PrewarmingFactory(slowFactory, 4, executor)) {
+            Thread.sleep(200);
+            System.out.println("预热完成 --> " + factory);
+            for (int i = 0; i < 8; i++) {
+                factory.newProductAsync().join();
+            }
+            System.out.println("连续取 8 个 --> " + factory);
+            Thread.sleep(200);
+            System.out.println("补货之后 --> " + factory);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
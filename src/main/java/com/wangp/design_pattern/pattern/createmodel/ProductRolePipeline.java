@@ -0,0 +1,384 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 产品流式建造流水线
+ *
+ * 从 CSV 或 JSON Lines 文件中逐行读取部件数据，每攒够一块（chunk）就交给线程池，
+ * 由该块独占的建造者和指挥者逐行建造产品，建好一个就交给 sink 一个，不需要把整个文件读进内存。
+ * 同时在途的块数有上限，读文件的线程在块处理不过来时会等待，所以内存占用与文件大小无关，
+ * 只取决于 chunkSize * maxInFlightChunks。
+ *
+ * 支持的行格式：
+ * CSV：partA,partB,partC（不支持引号转义，首行为 partA,partB,partC 时视为表头跳过）
+ * JSON Lines：{"partA":"...","partB":"...","partC":"..."}（只支持扁平对象，部件字段的值必须是字符串或 null，
+ * 其他字段可以是字符串、数字、true/false/null，字符串支持 JSON 的转义）
+ * 无法解析的行计入 malformed 并跳过。sink 会被多个线程同时调用，需要是线程安全的。
+ */
+public class ProductRolePipeline {
+
+    private static final String CSV_HEADER = "partA,partB,partC";
+
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxInFlightChunks;
+
+    /**
+     * @param executor 建造产品的线程池
+     * @param chunkSize 每块的行数
+     * @param maxInFlightChunks 同时在途的最大块数
+     */
+    public ProductRolePipeline(Executor executor, int chunkSize, int maxInFlightChunks) {
+        if (chunkSize < 1 || maxInFlightChunks < 1) {
+            throw new IllegalArgumentException("chunkSize 与 maxInFlightChunks 必须大于0");
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxInFlightChunks = maxInFlightChunks;
+    }
+
+    /**
+     * 处理整个文件，全部产品交给 sink 之后返回
+     * @param file 输入文件
+     * @param sink 产品的接收方
+     * @return 处理统计
+     */
+    public Stats run(Path file, Consumer<? super FrozenProductRole> sink) throws IOException {
+        Semaphore inFlight = new Semaphore(maxInFlightChunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        LongAdder rows = new LongAdder();
+        LongAdder malformed = new LongAdder();
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] chunk = new String[chunkSize];
+            int size = 0;
+            boolean first = true;
+            String line;
+            while ((line = reader.readLine()) != null && failure.get() == null) {
+                if (first) {
+                    first = false;
+                    if (CSV_HEADER.equals(line.trim())) {
+                        continue;
+                    }
+                }
+                chunk[size++] = line;
+                if (size == chunkSize) {
+                    submit(chunk, size, sink, inFlight, failure, rows, malformed);
+                    chunk = new String[chunkSize];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                submit(chunk, size, sink, inFlight, failure, rows, malformed);
+            }
+            inFlight.acquire(maxInFlightChunks);
+            inFlight.release(maxInFlightChunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("流水线被中断");
+        }
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("产品建造失败", error);
+        }
+        return new Stats(rows.sum(), malformed.sum(), System.nanoTime() - start);
+    }
+
+    private void submit(String[] chunk, int size, Consumer<? super FrozenProductRole> sink, Semaphore inFlight,
+                        AtomicReference<Throwable> failure, LongAdder rows, LongAdder malformed) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    RecordBuilder builder = new RecordBuilder();
+                    Director director = new Director(builder);
+                    for (int i = 0; i < size; i++) {
+                        if (builder.load(chunk[i])) {
+                            sink.accept(director.constructFrozen());
+                            rows.increment();
+                        } else {
+                            malformed.increment();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 处理统计
+     */
+    public static final class Stats {
+        private final long rows;
+        private final long malformed;
+        private final long elapsedNanos;
+
+        Stats(long rows, long malformed, long elapsedNanos) {
+            this.rows = rows;
+            this.malformed = malformed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d, malformed=%d, elapsed=%.0fms, %.0f rows/s",
+                    rows, malformed, elapsedNanos / 1e6, rowsPerSecond());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("product-role", ".csv");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+                for (int i = 0; i < 1_000_000; i++) {
+                    writer.write("A" + i + ",B" + i + ",C" + i);
+                    writer.newLine();
+                }
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            try {
+                LongAdder products = new LongAdder();
+                Stats stats = new ProductRolePipeline(executor, 4096, 8).run(file, product -> products.increment());
+                System.out.println("流式建造完成 --> " + stats + ", 收到产品 --> " + products.sum());
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
+
+/**
+ * 按输入记录建造部件的具体建造者，先 load() 一行数据再由指挥者建造
+ */
+class RecordBuilder extends Builder {
+
+    private final String[] parts = new String[3];
+    private int position;
+
+    /**
+     * 解析一行 CSV 或 JSON，成功时返回 true
+     */
+    boolean load(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return false;
+        }
+        return trimmed.charAt(0) == '{' ? loadJson(trimmed) : loadCsv(trimmed);
+    }
+
+    private boolean loadCsv(String line) {
+        int first = line.indexOf(',');
+        int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+        if (second < 0 || line.indexOf(',', second + 1) >= 0) {
+            return false;
+        }
+        parts[0] = line.substring(0, first);
+        parts[1] = line.substring(first + 1, second);
+        parts[2] = line.substring(second + 1);
+        return true;
+    }
+
+    /**
+     * 逐个字符解析扁平 JSON 对象，至少有一个部件字段时返回 true；
+     * 部件字段的值不是字符串、字符串没有结束、出现嵌套的对象或数组等情况都整行返回 false
+     */
+    private boolean loadJson(String json) {
+        Arrays.fill(parts, null);
+        position = 1;
+        skipWhitespace(json);
+        if (position < json.length() && json.charAt(position) == '}') {
+            return false;
+        }
+        boolean found = false;
+        while (true) {
+            String key = readString(json);
+            skipWhitespace(json);
+            if (key == null || position >= json.length() || json.charAt(position) != ':') {
+                return false;
+            }
+            position++;
+            skipWhitespace(json);
+            int part = partIndex(key);
+            if (position < json.length() && json.charAt(position) == '"') {
+                String value = readString(json);
+                if (value == null) {
+                    return false;
+                }
+                if (part >= 0) {
+                    parts[part] = value;
+                    found = true;
+                }
+            } else {
+                String literal = readLiteral(json);
+                if (literal == null || part >= 0 && !"null".equals(literal)) {
+                    return false;
+                }
+            }
+            skipWhitespace(json);
+            if (position >= json.length()) {
+                return false;
+            }
+            char c = json.charAt(position++);
+            if (c == '}') {
+                return position == json.length() && found;
+            }
+            if (c != ',') {
+                return false;
+            }
+            skipWhitespace(json);
+        }
+    }
+
+    private static int partIndex(String key) {
+        switch (key) {
+            case "partA":
+                return 0;
+            case "partB":
+                return 1;
+            case "partC":
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    private void skipWhitespace(String json) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * 读取从当前位置开始的字符串，当前位置不是引号、字符串没有结束或转义不合法时返回 null
+     */
+    private String readString(String json) {
+        if (position >= json.length() || json.charAt(position) != '"') {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = position + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                position = i + 1;
+                return value.toString();
+            }
+            if (c == '\\') {
+                if (++i == json.length()) {
+                    return null;
+                }
+                switch (json.charAt(i)) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        c = json.charAt(i);
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        if (i + 4 >= json.length()) {
+                            return null;
+                        }
+                        try {
+                            c = (char) Integer.parseInt(json.substring(i + 1, i + 5), 16);
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            value.append(c);
+        }
+        return null;
+    }
+
+    /**
+     * 读取数字、true/false/null 这类字面量，遇到对象、数组或空值时返回 null
+     */
+    private String readLiteral(String json) {
+        int begin = position;
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '+' && c != '.') {
+                break;
+            }
+            position++;
+        }
+        return position == begin ? null : json.substring(begin, position);
+    }
+
+    @Override
+    public void buildPartA() {
+        productRole.setPartA(parts[0]);
+    }
+
+    @Override
+    public void buildPartB() {
+        productRole.setPartB(parts[1]);
+    }
+
+    @Override
+    public void buildPartC() {
+        productRole.setPartC(parts[2]);
+    }
+}
@@ -36,5 +36,13 @@ class RealizeType implements Cloneable{
         System.out.println("具体原型复制成功!");
         return super.clone();
     }
+
+    /**
+     * 深复制：嵌套对象一并复制，不调用构造函数
+     */
+    public RealizeType deepClone() {
+        System.out.println("具体原型深复制成功!");
+        return PrototypeCopier.copy(this);
+    }
 }
 
@@ -0,0 +1,241 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 原型管理器
+ *
+ * 原型模式的拓展：按名字登记原型，使用方只凭名字取副本。
+ * cloneMany() 一次取出一批副本，副本对象来自预先分配好的板（slab），
+ * 不是每次 new 出来的；这一批用完 close() 之后板回收到池中，下一批复用同一组对象，
+ * 只需把原型的状态重新复制进去。突发的大批量创建因此不会推高新生代 GC 的频率。
+ *
+ * 板的容量按 2 的幂分级，每级最多保留 maxRetainedSlabs 块，多余的交给 GC。
+ * 登记和取副本都可以被多个线程并发调用；原型本身在登记后不应再被修改。
+ */
+public class PrototypeRegistry {
+
+    /**
+     * 板的容量按 2 的幂取整，最大 2^30，共 31 档
+     */
+    private static final int LEVELS = 31;
+    private static final int MAX_BATCH = 1 << (LEVELS - 1);
+
+    private final Map<String, Entry<?>> entries = new ConcurrentHashMap<>();
+    private final int maxRetainedSlabs;
+
+    public PrototypeRegistry() {
+        this(16);
+    }
+
+    /**
+     * @param maxRetainedSlabs 每个原型、每个容量级别最多保留的空闲板数
+     */
+    public PrototypeRegistry(int maxRetainedSlabs) {
+        this.maxRetainedSlabs = maxRetainedSlabs;
+    }
+
+    /**
+     * 登记原型
+     * @param key 原型名
+     * @param prototype 原型对象
+     * @param blank 创建板中空白对象的方法
+     * @param copier 把原型状态复制到已有对象中的方法，参数依次为原型、目标对象
+     */
+    public <T> void register(String key, T prototype, Supplier<? extends T> blank, BiConsumer<? super T, ? super T> copier) {
+        if (entries.putIfAbsent(key, new Entry<>(prototype, blank, copier, maxRetainedSlabs)) != null) {
+            throw new IllegalStateException("原型重复登记: " + key);
+        }
+    }
+
+    /**
+     * 取一个新副本，不经过板
+     */
+    public <T> T cloneOne(String key) {
+        Entry<T> entry = entry(key);
+        T copy = entry.blank.get();
+        entry.copier.accept(entry.prototype, copy);
+        return copy;
+    }
+
+    /**
+     * 批量取副本，用完后必须 close() 归还，归还后不得再持有其中的对象
+     * @param key 原型名
+     * @param n 副本个数
+     */
+    public <T> CloneBatch<T> cloneMany(String key, int n) {
+        if (n < 0 || n > MAX_BATCH) {
+            throw new IllegalArgumentException("副本个数必须在 0 到 " + MAX_BATCH + " 之间: " + n);
+        }
+        Entry<T> entry = entry(key);
+        Object[] slab = entry.acquire(n);
+        for (int i = 0; i < n; i++) {
+            @SuppressWarnings("unchecked")
+            T target = (T) slab[i];
+            entry.copier.accept(entry.prototype, target);
+        }
+        return new CloneBatch<>(entry, slab, n);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> entry(String key) {
+        Entry<T> entry = (Entry<T>) entries.get(key);
+        if (entry == null) {
+            throw new IllegalArgumentException("原型未登记: " + key);
+        }
+        return entry;
+    }
+
+    /**
+     * 单个原型及其空闲板
+     */
+    private static final class Entry<T> {
+        private final T prototype;
+        private final Supplier<? extends T> blank;
+        private final BiConsumer<? super T, ? super T> copier;
+        private final int maxRetainedSlabs;
+        /**
+         * 下标为容量的以 2 为底的对数
+         */
+        private final Queue<Object[]>[] freeSlabs;
+        private final AtomicInteger[] retained = new AtomicInteger[LEVELS];
+
+        Entry(T prototype, Supplier<? extends T> blank, BiConsumer<? super T, ? super T> copier, int maxRetainedSlabs) {
+            this.prototype = prototype;
+            this.blank = blank;
+            this.copier = copier;
+            this.maxRetainedSlabs = maxRetainedSlabs;
+            @SuppressWarnings("unchecked")
+            Queue<Object[]>[] queues = (Queue<Object[]>[]) new Queue<?>[LEVELS];
+            this.freeSlabs = queues;
+            for (int i = 0; i < freeSlabs.length; i++) {
+                freeSlabs[i] = new ConcurrentLinkedQueue<>();
+                retained[i] = new AtomicInteger();
+            }
+        }
+
+        Object[] acquire(int n) {
+            int level = level(n);
+            Object[] slab = freeSlabs[level].poll();
+            if (slab != null) {
+                retained[level].decrementAndGet();
+                return slab;
+            }
+            slab = new Object[1 << level];
+            for (int i = 0; i < slab.length; i++) {
+                slab[i] = blank.get();
+            }
+            return slab;
+        }
+
+        void release(Object[] slab) {
+            int level = level(slab.length);
+            if (retained[level].incrementAndGet() <= maxRetainedSlabs) {
+                freeSlabs[level].offer(slab);
+            } else {
+                retained[level].decrementAndGet();
+            }
+        }
+
+        private static int level(int n) {
+            return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+        }
+    }
+
+    /**
+     * 一批副本
+     * @param <T> 原型类型
+     */
+    public static final class CloneBatch<T> implements AutoCloseable {
+        private final Entry<T> entry;
+        private final AtomicReference<Object[]> slab;
+        private final int size;
+
+        private CloneBatch(Entry<T> entry, Object[] slab, int size) {
+            this.entry = entry;
+            this.slab = new AtomicReference<>(slab);
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            Object[] objects = slab.get();
+            if (objects == null) {
+                throw new IllegalStateException("副本已归还");
+            }
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+            }
+            return (T) objects[index];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 归还板，可重复调用
+         */
+        @Override
+        public void close() {
+            Object[] objects = slab.getAndSet(null);
+            if (objects != null) {
+                entry.release(objects);
+            }
+        }
+    }
+
+    /**
+     * 突发创建对比：逐个深复制与按板批量复制，统计期间的 GC 次数
+     */
+    public static void main(String[] args) {
+        PrototypeRegistry registry = new PrototypeRegistry();
+        PrototypeNode prototype = PrototypeNode.sample();
+        registry.register("node", prototype, PrototypeNode::new, (source, target) -> {
+            target.name = source.name;
+            target.level = source.level;
+            if (target.values == null || target.values.length != source.values.length) {
+                target.values = new int[source.values.length];
+            }
+            System.arraycopy(source.values, 0, target.values, 0, source.values.length);
+        });
+
+        int bursts = 2_000;
+        int batch = 10_000;
+        long gcBefore = gcCount();
+        long start = System.nanoTime();
+        for (int b = 0; b < bursts; b++) {
+            Object[] copies = new Object[batch];
+            for (int i = 0; i < batch; i++) {
+                copies[i] = registry.cloneOne("node");
+            }
+        }
+        System.out.println("逐个复制  耗时ms --> " + (System.nanoTime() - start) / 1_000_000 + ", GC次数 --> " + (gcCount() - gcBefore));
+
+        gcBefore = gcCount();
+        start = System.nanoTime();
+        for (int b = 0; b < bursts; b++) {
+            try (CloneBatch<PrototypeNode> copies = registry.cloneMany("node", batch)) {
+                copies.get(batch - 1).level++;
+            }
+        }
+        System.out.println("按板复制  耗时ms --> " + (System.nanoTime() - start) / 1_000_000 + ", GC次数 --> " + (gcCount() - gcBefore));
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
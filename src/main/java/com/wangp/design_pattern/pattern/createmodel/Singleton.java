@@ -29,10 +29,28 @@ public class Singleton {
     }
 
     /**
-     * 加锁
+     * 双重检查：实例创建后只有一次 volatile 读，不再获取类锁
      * @return
      */
-    public synchronized static Singleton getInstance(){
+    public static Singleton getInstance(){
+        Singleton singleton = instance;
+        if(singleton == null){
+            synchronized (Singleton.class){
+                singleton = instance;
+                if(singleton == null){
+                    singleton = new Singleton();
+                    instance = singleton;
+                }
+            }
+        }
+        return singleton;
+    }
+
+    /**
+     * 加锁：每次访问都要获取类锁，保留用于与 getInstance() 做竞争对比
+     * @return
+     */
+    public synchronized static Singleton getInstanceSynchronized(){
         if(instance == null){
             instance = new Singleton();
             return instance;
@@ -42,4 +60,3 @@ public class Singleton {
 
 
 }
-
@@ -0,0 +1,110 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 单例登记表
+ *
+ * 按类型管理多个延迟初始化的单例，是单例模式的登记式写法。
+ * 每个类型对应一个持有者，持有者内部用双重检查创建实例：
+ * 已经创建好的单例只需一次 ConcurrentHashMap 读和一次 volatile 读，读路径没有锁；
+ * 首次创建时只锁该类型自己的持有者，不同类型之间互不阻塞，创建方法里也可以再去获取其他单例。
+ */
+public class SingletonRegistry {
+
+    private final Map<Class<?>, Holder<?>> holders = new ConcurrentHashMap<>();
+
+    /**
+     * 登记单例的创建方式，首次 get() 时才真正创建
+     * @param type 单例类型
+     * @param supplier 创建方法
+     */
+    public <T> void register(Class<T> type, Supplier<? extends T> supplier) {
+        if (holders.putIfAbsent(type, new Holder<>(type, supplier)) != null) {
+            throw new IllegalStateException("单例重复登记: " + type.getName());
+        }
+    }
+
+    /**
+     * 获取单例
+     * @param type 单例类型
+     * @return 该类型唯一的实例
+     */
+    public <T> T get(Class<T> type) {
+        Holder<?> holder = holders.get(type);
+        if (holder == null) {
+            throw new IllegalArgumentException("单例未登记: " + type.getName());
+        }
+        return type.cast(holder.get());
+    }
+
+    /**
+     * 是否已登记
+     */
+    public boolean isRegistered(Class<?> type) {
+        return holders.containsKey(type);
+    }
+
+    /**
+     * 是否已经创建
+     */
+    public boolean isInitialized(Class<?> type) {
+        Holder<?> holder = holders.get(type);
+        return holder != null && holder.instance != null;
+    }
+
+    /**
+     * 单个类型的持有者
+     */
+    private static final class Holder<T> {
+        private final Class<T> type;
+        private final Supplier<? extends T> supplier;
+        private volatile T instance;
+
+        Holder(Class<T> type, Supplier<? extends T> supplier) {
+            this.type = type;
+            this.supplier = supplier;
+        }
+
+        T get() {
+            T value = instance;
+            if (value == null) {
+                synchronized (this) {
+                    value = instance;
+                    if (value == null) {
+                        value = supplier.get();
+                        if (value == null) {
+                            throw new IllegalStateException("单例创建结果为空: " + type.getName());
+                        }
+                        instance = value;
+                    }
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 竞争测试：1、8、64 个线程下对比 synchronized 访问、双重检查访问和登记表访问。
+     * 多线程下不写共享的 sink，避免结果槽本身成为竞争点
+     */
+    public static void main(String[] args) {
+        SingletonRegistry registry = new SingletonRegistry();
+        registry.register(Singleton.class, Singleton::getInstance);
+        long ops = 2_000_000;
+        for (int threads : new int[]{1, 8, 64}) {
+            MicroBenchmark.throughput("Singleton.getInstanceSynchronized()", threads, ops,
+                    () -> Objects.requireNonNull(Singleton.getInstanceSynchronized()));
+            MicroBenchmark.throughput("Singleton.getInstance()", threads, ops,
+                    () -> Objects.requireNonNull(Singleton.getInstance()));
+            MicroBenchmark.throughput("SingletonRegistry.get()", threads, ops,
+                    () -> Objects.requireNonNull(registry.get(Singleton.class)));
+        }
+        System.out.println("同一实例  -->" + (registry.get(Singleton.class) == Singleton.getInstance()));
+    }
+}
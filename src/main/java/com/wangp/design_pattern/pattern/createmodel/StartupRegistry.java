@@ -0,0 +1,196 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * 启动初始化登记表
+ *
+ * 服务启动时往往要依次初始化几十个单例组件，逐个初始化的耗时之和就是冷启动时间。
+ * 这里每个单例登记时声明自己依赖哪些单例，start() 按依赖关系把标记为 eager 的单例（连同它们的依赖）
+ * 放到线程池中并行初始化：依赖先完成，互不相关的同时进行。没有标记 eager 的单例在第一次 get() 时才初始化，
+ * 初始化前同样会先初始化它的依赖。
+ *
+ * 单例本身由 SingletonRegistry 持有，每个单例只会初始化一次。全部登记完成后再调用 start() 或 get()。
+ * start() 结束时打印各单例的开始时间、耗时和关键路径。
+ */
+public class StartupRegistry {
+
+    private final DependencyGraph<Class<?>> graph = new DependencyGraph<>();
+    private final SingletonRegistry singletons = new SingletonRegistry();
+    private final Set<Class<?>> eager = new HashSet<>();
+    private final Map<Class<?>, long[]> timings = new ConcurrentHashMap<>();
+    private volatile boolean validated;
+    private volatile long origin = System.nanoTime();
+
+    /**
+     * 登记一个单例
+     * @param type 单例类型
+     * @param supplier 初始化方法，可以在其中通过 get() 取得已声明的依赖
+     * @param eager 是否在 start() 时初始化
+     * @param dependsOn 依赖的单例
+     */
+    public <T> StartupRegistry register(Class<T> type, Supplier<? extends T> supplier, boolean eager, Class<?>... dependsOn) {
+        graph.add(type, dependsOn);
+        if (eager) {
+            this.eager.add(type);
+        }
+        singletons.register(type, () -> {
+            for (Class<?> dependency : dependsOn) {
+                get(dependency);
+            }
+            long start = System.nanoTime();
+            T instance = supplier.get();
+            timings.put(type, new long[]{start - origin, System.nanoTime() - start});
+            return instance;
+        });
+        validated = false;
+        return this;
+    }
+
+    /**
+     * 获取单例，尚未初始化时先初始化它的依赖和它自己
+     */
+    public <T> T get(Class<T> type) {
+        validate();
+        return singletons.get(type);
+    }
+
+    /**
+     * 使用公共 ForkJoinPool 并行初始化
+     */
+    public void start() {
+        start(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 并行初始化所有 eager 单例及其依赖，全部完成后返回
+     * @param executor 初始化使用的线程池
+     */
+    public void start(Executor executor) {
+        validate();
+        origin = System.nanoTime();
+        Set<Class<?>> required = new HashSet<>();
+        for (Class<?> type : eager) {
+            collect(type, required);
+        }
+        Map<Class<?>, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Class<?> type : graph.topologicalOrder()) {
+            if (!required.contains(type)) {
+                continue;
+            }
+            List<Class<?>> deps = graph.dependenciesOf(type);
+            CompletableFuture<?>[] depFutures = new CompletableFuture<?>[deps.size()];
+            for (int i = 0; i < depFutures.length; i++) {
+                depFutures[i] = futures.get(deps.get(i));
+            }
+            futures.put(type, CompletableFuture.allOf(depFutures).thenRunAsync(() -> singletons.get(type), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        printTimings(System.nanoTime() - origin);
+    }
+
+    private void collect(Class<?> type, Set<Class<?>> required) {
+        if (required.add(type)) {
+            for (Class<?> dependency : graph.dependenciesOf(type)) {
+                collect(dependency, required);
+            }
+        }
+    }
+
+    /**
+     * 检查依赖是否完整、有没有循环，避免懒加载时无限递归
+     */
+    private void validate() {
+        if (!validated) {
+            graph.topologicalOrder();
+            validated = true;
+        }
+    }
+
+    private void printTimings(long elapsedNanos) {
+        List<Map.Entry<Class<?>, long[]>> entries = new ArrayList<>(timings.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue()[0]));
+        Map<Class<?>, Long> durations = new HashMap<>();
+        long sequential = 0;
+        for (Map.Entry<Class<?>, long[]> entry : entries) {
+            long[] timing = entry.getValue();
+            durations.put(entry.getKey(), timing[1]);
+            sequential += timing[1];
+            System.out.println(String.format("初始化 %-30s 开始 %8.2f ms  耗时 %8.2f ms",
+                    entry.getKey().getSimpleName(), timing[0] / 1e6, timing[1] / 1e6));
+        }
+        List<String> path = new ArrayList<>();
+        for (Class<?> type : graph.criticalPath(durations)) {
+            path.add(type.getSimpleName());
+        }
+        System.out.println(String.format("启动完成 %.2f ms（逐个初始化约 %.2f ms），关键路径 %s",
+                elapsedNanos / 1e6, sequential / 1e6, path));
+    }
+
+    public static void main(String[] args) {
+        StartupRegistry registry = new StartupRegistry()
+                .register(Config.class, () -> new Config(slow(50)), true)
+                .register(Cache.class, () -> new Cache(slow(80)), true, Config.class)
+                .register(Metrics.class, () -> new Metrics(slow(60)), true, Config.class)
+                .register(Service.class, () -> new Service(slow(40)), true, Cache.class, Metrics.class)
+                .register(Report.class, () -> new Report(slow(30)), false, Service.class);
+        registry.start();
+        System.out.println("懒加载的 Report 尚未初始化 --> " + !registry.singletons.isInitialized(Report.class));
+        registry.get(Report.class);
+        System.out.println("get 之后已初始化 --> " + registry.singletons.isInitialized(Report.class));
+    }
+
+    private static long slow(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return millis;
+    }
+
+    static final class Config {
+        Config(long cost) {
+        }
+    }
+
+    static final class Cache {
+        Cache(long cost) {
+        }
+    }
+
+    static final class Metrics {
+        Metrics(long cost) {
+        }
+    }
+
+    static final class Service {
+        Service(long cost) {
+        }
+    }
+
+    static final class Report {
+        Report(long cost) {
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 适配器工厂
+ *
+ * EAdapter、OAdapter 这类适配器做的事情只是把 Motor.driver() 转到适配者上一个名字不同的方法。
+ * 适配器工厂按"目标接口 + 适配者类型 + 方法映射"生成适配器，不用再手写：
+ * 1.目标接口只有一个抽象方法时（如 Motor），经 LambdaMetafactory 生成一个实现类，
+ *   调用路径与手写的适配器相同，JIT 预热后没有额外开销；
+ * 2.有多个抽象方法时，由 JDK 动态代理把每个方法转给预先绑定好的 MethodHandle，目标接口的默认方法调用接口自己的实现。
+ * 方法映射中没有出现的目标方法按同名方法适配；适配者有多个可用的重载时取参数类型最具体的一个，分不出时报错。
+ * 同一组映射只生成一次，之后每次适配只是创建一个实例。
+ * 生成结果挂在适配者类的 ClassValue 上，随适配者类一起卸载，缓存不会让类加载器无法回收。
+ */
+public final class AdapterFactory {
+
+    private static final ClassValue<Map<List<Object>, Function<Object, ?>>> COMPILED =
+            new ClassValue<Map<List<Object>, Function<Object, ?>>>() {
+                @Override
+                protected Map<List<Object>, Function<Object, ?>> computeValue(Class<?> adapteeType) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private AdapterFactory() {
+    }
+
+    /**
+     * 适配本包可访问的适配者
+     * @param target 目标接口
+     * @param adaptee 适配者
+     * @param mapping 目标方法名到适配者方法名的映射
+     */
+    public static <T> T adapt(Class<T> target, Object adaptee, Map<String, String> mapping) {
+        return adapt(target, adaptee, mapping, MethodHandles.lookup());
+    }
+
+    /**
+     * @param lookup 对目标接口和适配者方法有访问权限的 Lookup，适配者不在本包时由调用方传入 MethodHandles.lookup()
+     */
+    public static <T> T adapt(Class<T> target, Object adaptee, Map<String, String> mapping, MethodHandles.Lookup lookup) {
+        return compile(target, adaptee.getClass(), mapping, lookup).apply(adaptee);
+    }
+
+    /**
+     * 生成适配器的构造方法，结果按"目标接口 + 适配者类型 + 方法映射 + Lookup"缓存
+     * @return 传入适配者、返回适配器的函数
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Function<Object, T> compile(Class<T> target, Class<?> adapteeType, Map<String, String> mapping,
+                                                  MethodHandles.Lookup lookup) {
+        List<Object> key = Arrays.asList(target, new HashMap<>(mapping), lookup.lookupClass());
+        return (Function<Object, T>) COMPILED.get(adapteeType)
+                .computeIfAbsent(key, k -> generate(target, adapteeType, mapping, lookup));
+    }
+
+    private static <T> Function<Object, T> generate(Class<T> target, Class<?> adapteeType, Map<String, String> mapping,
+                                                    MethodHandles.Lookup lookup) {
+        if (!target.isInterface()) {
+            throw new IllegalArgumentException("目标必须是接口: " + target.getName());
+        }
+        List<Method> abstractMethods = new ArrayList<>();
+        for (Method method : target.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                abstractMethods.add(method);
+            }
+        }
+        for (String name : mapping.keySet()) {
+            if (abstractMethods.stream().noneMatch(method -> method.getName().equals(name))) {
+                throw new IllegalArgumentException("目标接口没有方法: " + target.getSimpleName() + "." + name);
+            }
+        }
+        Map<Method, MethodHandle> handles = new HashMap<>();
+        for (Method method : abstractMethods) {
+            handles.put(method, findAdapteeMethod(adapteeType, mapping.getOrDefault(method.getName(), method.getName()),
+                    method, lookup));
+        }
+        if (abstractMethods.size() == 1) {
+            return lambdaAdapter(target, adapteeType, abstractMethods.get(0), handles.get(abstractMethods.get(0)), lookup);
+        }
+        return proxyAdapter(target, handles, defaultMethods(target));
+    }
+
+    /**
+     * 目标接口上所有默认方法的实现，调用时第一个参数是代理对象
+     */
+    private static Map<Method, MethodHandle> defaultMethods(Class<?> target) {
+        Map<Method, MethodHandle> defaults = new HashMap<>();
+        for (Method method : target.getMethods()) {
+            if (method.isDefault()) {
+                defaults.put(method, defaultImplementation(method));
+            }
+        }
+        return defaults;
+    }
+
+    /**
+     * invokespecial 调用接口自己的默认实现，需要一个以该接口为查找类、带私有访问权限的 Lookup：
+     * Java 9 起由 MethodHandles.privateLookupIn() 得到，Java 8 只能通过 Lookup 的私有构造方法创建
+     */
+    private static MethodHandle defaultImplementation(Method method) {
+        Class<?> declaring = method.getDeclaringClass();
+        try {
+            MethodHandles.Lookup lookup;
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+                lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaring, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor =
+                        MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                constructor.setAccessible(true);
+                lookup = constructor.newInstance(declaring, MethodHandles.Lookup.PUBLIC | MethodHandles.Lookup.PRIVATE
+                        | MethodHandles.Lookup.PROTECTED | MethodHandles.Lookup.PACKAGE);
+            }
+            return lookup.unreflectSpecial(method, declaring);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("无法调用目标接口的默认方法: " + method, e);
+        }
+    }
+
+    /**
+     * 在适配者上找参数个数相同、参数类型兼容的同名方法。
+     * 子类中的方法覆盖父类同签名的方法；有多个重载可用时，参数类型与目标方法完全相同的优先，
+     * 否则取参数类型可以赋给其他所有候选的那一个（最具体的），没有这样的方法说明有歧义
+     */
+    private static MethodHandle findAdapteeMethod(Class<?> adapteeType, String name, Method targetMethod,
+                                                  MethodHandles.Lookup lookup) {
+        Class<?>[] parameters = targetMethod.getParameterTypes();
+        List<Method> candidates = new ArrayList<>();
+        for (Class<?> c = adapteeType; c != null; c = c.getSuperclass()) {
+            for (Method candidate : c.getDeclaredMethods()) {
+                if (candidate.getName().equals(name) && !Modifier.isStatic(candidate.getModifiers())
+                        && !candidate.isBridge() && assignable(parameters, candidate.getParameterTypes())
+                        && candidates.stream().noneMatch(m -> Arrays.equals(m.getParameterTypes(), candidate.getParameterTypes()))) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("适配者 " + adapteeType.getSimpleName() + " 没有可以适配 "
+                    + targetMethod.getName() + " 的方法: " + name);
+        }
+        Method chosen = mostSpecific(candidates, parameters);
+        if (chosen == null) {
+            throw new IllegalArgumentException("适配者 " + adapteeType.getSimpleName() + " 上适配 "
+                    + targetMethod.getName() + " 的方法有歧义: " + candidates);
+        }
+        try {
+            return lookup.unreflect(chosen);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("无法访问适配者方法: " + chosen, e);
+        }
+    }
+
+    private static Method mostSpecific(List<Method> candidates, Class<?>[] parameters) {
+        for (Method candidate : candidates) {
+            if (Arrays.equals(candidate.getParameterTypes(), parameters)) {
+                return candidate;
+            }
+        }
+        Method chosen = null;
+        for (Method candidate : candidates) {
+            if (candidates.stream().allMatch(other -> assignable(candidate.getParameterTypes(), other.getParameterTypes()))) {
+                if (chosen != null) {
+                    return null;
+                }
+                chosen = candidate;
+            }
+        }
+        return chosen;
+    }
+
+    private static boolean assignable(Class<?>[] from, Class<?>[] to) {
+        if (from.length != to.length) {
+            return false;
+        }
+        for (int i = 0; i < from.length; i++) {
+            if (!MethodType.methodType(to[i]).wrap().returnType().isAssignableFrom(
+                    MethodType.methodType(from[i]).wrap().returnType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 单方法接口：LambdaMetafactory 生成的实现类捕获适配者，直接调用适配者方法
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Function<Object, T> lambdaAdapter(Class<T> target, Class<?> adapteeType, Method method,
+                                                         MethodHandle implementation, MethodHandles.Lookup lookup) {
+        MethodType samType = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        MethodHandle factory;
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, method.getName(),
+                    MethodType.methodType(target, adapteeType), samType, implementation, samType);
+            factory = site.getTarget().asType(MethodType.methodType(Object.class, Object.class));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("无法生成适配器: " + target.getName(), e);
+        }
+        return adaptee -> {
+            try {
+                return (T) factory.invokeExact(adaptee);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * 多方法接口：JDK 动态代理，抽象方法转给绑定了适配者的 MethodHandle，默认方法在代理对象上调用接口的实现
+     */
+    private static <T> Function<Object, T> proxyAdapter(Class<T> target, Map<Method, MethodHandle> handles,
+                                                        Map<Method, MethodHandle> defaults) {
+        Map<Method, MethodHandle> invokers = spreaders(handles);
+        Map<Method, MethodHandle> defaultInvokers = spreaders(defaults);
+        return adaptee -> target.cast(java.lang.reflect.Proxy.newProxyInstance(target.getClassLoader(),
+                new Class<?>[]{target}, (proxy, method, args) -> {
+                    Object[] arguments = args == null ? new Object[0] : args;
+                    MethodHandle invoker = invokers.get(method);
+                    if (invoker != null) {
+                        return (Object) invoker.invokeExact(adaptee, arguments);
+                    }
+                    MethodHandle defaultInvoker = defaultInvokers.get(method);
+                    if (defaultInvoker != null) {
+                        return (Object) defaultInvoker.invokeExact(proxy, arguments);
+                    }
+                    return objectMethod(proxy, adaptee, method, args);
+                }));
+    }
+
+    /**
+     * 把 (接收者, 参数...) 形式的 MethodHandle 统一成 (Object, Object[])Object
+     */
+    private static Map<Method, MethodHandle> spreaders(Map<Method, MethodHandle> handles) {
+        Map<Method, MethodHandle> spreaders = new HashMap<>();
+        for (Map.Entry<Method, MethodHandle> entry : handles.entrySet()) {
+            int arity = entry.getKey().getParameterCount();
+            spreaders.put(entry.getKey(), entry.getValue().asSpreader(Object[].class, arity)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class)));
+        }
+        return Collections.unmodifiableMap(spreaders);
+    }
+
+    private static Object objectMethod(Object proxy, Object adaptee, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Adapter(" + adaptee + ")";
+            default:
+                throw new UnsupportedOperationException("不支持的方法: " + method);
+        }
+    }
+
+    /**
+     * 单次调用开销：手写适配器、生成的适配器、每次反射调用的适配器，适配者不打印
+     */
+    public static void main(String[] args) throws ReflectiveOperationException {
+        Motor electric = adapt(Motor.class, new EMotor(), Collections.singletonMap("driver", "electricDrive"));
+        Motor optical = adapt(Motor.class, new OMotor(), Collections.singletonMap("driver", "opticalDrive"));
+        electric.driver();
+        optical.driver();
+
+        QuietMotor quiet = new QuietMotor();
+        Motor handWritten = new Motor() {
+            @Override
+            public void driver() {
+                quiet.electricDrive();
+            }
+        };
+        Motor generated = adapt(Motor.class, quiet, Collections.singletonMap("driver", "electricDrive"));
+        Method electricDrive = QuietMotor.class.getDeclaredMethod("electricDrive");
+        Motor reflective = () -> {
+            try {
+                electricDrive.invoke(quiet);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        //每个被测体各自循环调用，调用点只见过一种适配器，避免共用调用点被多种实现污染；
+        //适配者的计数是 volatile 的，每次调用都读写一次，JIT 不能把整个循环合并成一次加法
+        long ops = 100_000;
+        MicroBenchmark.nsPerOp("手写适配器（每 1000 次）", ops, () -> {
+            for (int i = 0; i < 1000; i++) {
+                handWritten.driver();
+            }
+            MicroBenchmark.sink = quiet.drives;
+        });
+        MicroBenchmark.nsPerOp("生成的适配器（每 1000 次）", ops, () -> {
+            for (int i = 0; i < 1000; i++) {
+                generated.driver();
+            }
+            MicroBenchmark.sink = quiet.drives;
+        });
+        MicroBenchmark.nsPerOp("反射调用的适配器（每 1000 次）", ops / 10, () -> {
+            for (int i = 0; i < 1000; i++) {
+                reflective.driver();
+            }
+            MicroBenchmark.sink = quiet.drives;
+        });
+        System.out.println("适配者被调用 --> " + quiet.drives);
+    }
+}
+
+/**
+ * 不打印的电能发动机，用于测量适配器本身的开销
+ */
+class QuietMotor {
+
+    volatile long drives;
+
+    public void electricDrive() {
+        //单线程调用，不需要原子自增
+        drives = drives + 1;
+    }
+}
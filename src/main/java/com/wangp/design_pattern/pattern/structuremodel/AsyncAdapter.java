@@ -0,0 +1,242 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步适配器
+ *
+ * Adaptee.speclificRequest()、EMotor.electricDrive()、OMotor.opticalDrive() 都是阻塞调用，
+ * ObjectAdapter、EAdapter、OAdapter 直接在调用线程中执行它们，后端卡住时调用线程也跟着卡住。
+ * 异步适配器把阻塞的适配者放到一个隔离的有界线程池（Bulkhead）中执行，对外提供返回 CompletionStage 的目标接口 AsyncTarget：
+ * 1.线程数和排队数都有上限，队列满时立即以 RejectedExecutionException 失败，不会无限堆积；
+ * 2.从提交开始计时，超时后以 TimeoutException 失败，并中断仍在执行的阻塞调用；
+ * 3.统计提交、完成、失败、拒绝、超时的次数。
+ * 不同后端使用不同的 Bulkhead，一个后端卡住不会占满另一个后端的线程。
+ */
+public class AsyncAdapter implements AsyncTarget {
+
+    private final Runnable blockingCall;
+    private final Bulkhead bulkhead;
+
+    AsyncAdapter(Runnable blockingCall, Bulkhead bulkhead) {
+        this.blockingCall = blockingCall;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * ObjectAdapter 的异步版本
+     */
+    static AsyncAdapter of(Adaptee adaptee, Bulkhead bulkhead) {
+        return new AsyncAdapter(adaptee::speclificRequest, bulkhead);
+    }
+
+    /**
+     * EAdapter 的异步版本
+     */
+    static AsyncAdapter of(EMotor motor, Bulkhead bulkhead) {
+        return new AsyncAdapter(motor::electricDrive, bulkhead);
+    }
+
+    /**
+     * OAdapter 的异步版本
+     */
+    static AsyncAdapter of(OMotor motor, Bulkhead bulkhead) {
+        return new AsyncAdapter(motor::opticalDrive, bulkhead);
+    }
+
+    @Override
+    public CompletionStage<Void> requestAsync() {
+        return bulkhead.submit(blockingCall);
+    }
+
+    /**
+     * 隔离阻塞调用的有界线程池
+     */
+    public static final class Bulkhead implements AutoCloseable {
+
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final ScheduledThreadPoolExecutor timer;
+        private final long timeoutNanos;
+
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+
+        /**
+         * @param name 名称，用于线程名和统计输出
+         * @param threads 执行阻塞调用的线程数
+         * @param queueLimit 最多排队的调用数
+         * @param timeout 从提交开始计算的超时时间
+         * @param unit 时间单位
+         */
+        public Bulkhead(String name, int threads, int queueLimit, long timeout, TimeUnit unit) {
+            if (threads < 1 || queueLimit < 1) {
+                throw new IllegalArgumentException("线程数与排队数必须大于0");
+            }
+            this.name = name;
+            this.timeoutNanos = unit.toNanos(timeout);
+            AtomicInteger index = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueLimit), runnable -> {
+                        Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, name + "-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // 每次调用都会登记一个超时任务，正常结束时取消；不移出队列的话，取消的任务连同 result 会一直留到原定的超时时刻
+            this.timer.setRemoveOnCancelPolicy(true);
+        }
+
+        /**
+         * 提交一个阻塞调用，返回的 stage 在调用完成、失败、被拒绝或超时时完成。
+         * 调用结束和超时由 settled 决出唯一的结果，先计数再完成 stage，调用方在回调中读到的统计已经包含这一次
+         */
+        public CompletionStage<Void> submit(Runnable blockingCall) {
+            submitted.increment();
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            AtomicBoolean settled = new AtomicBoolean();
+            Future<?> task;
+            try {
+                task = executor.submit(() -> {
+                    try {
+                        blockingCall.run();
+                    } catch (Throwable e) {
+                        if (settled.compareAndSet(false, true)) {
+                            failed.increment();
+                            result.completeExceptionally(e);
+                        }
+                        return;
+                    }
+                    if (settled.compareAndSet(false, true)) {
+                        completed.increment();
+                        result.complete(null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                result.completeExceptionally(e);
+                return result;
+            }
+            ScheduledFuture<?> timeout;
+            try {
+                timeout = timer.schedule(() -> {
+                    if (settled.compareAndSet(false, true)) {
+                        timedOut.increment();
+                        result.completeExceptionally(new TimeoutException(name + " 调用超时"));
+                        task.cancel(true);
+                    }
+                }, timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // 关闭后无法再计时，撤回已提交的调用，不留下没有超时保护的任务
+                task.cancel(true);
+                executor.purge();
+                if (settled.compareAndSet(false, true)) {
+                    rejected.increment();
+                    result.completeExceptionally(e);
+                }
+                return result;
+            }
+            result.whenComplete((v, e) -> timeout.cancel(false));
+            return result;
+        }
+
+        public int queueDepth() {
+            return executor.getQueue().size();
+        }
+
+        public int activeCount() {
+            return executor.getActiveCount();
+        }
+
+        public long submitted() {
+            return submitted.sum();
+        }
+
+        public long completed() {
+            return completed.sum();
+        }
+
+        public long failed() {
+            return failed.sum();
+        }
+
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        public long timedOut() {
+            return timedOut.sum();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+            timer.shutdownNow();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Bulkhead{%s, active=%d, queued=%d, submitted=%d, completed=%d, failed=%d, rejected=%d, timedOut=%d}",
+                    name, activeCount(), queueDepth(), submitted(), completed(), failed(), rejected(), timedOut());
+        }
+    }
+
+    /**
+     * 卡住的适配者占满了自己的 Bulkhead，另一个后端的电能发动机不受影响
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try (Bulkhead stalled = new Bulkhead("legacy", 2, 4, 50, TimeUnit.MILLISECONDS);
+             Bulkhead motors = new Bulkhead("motor", 2, 16, 50, TimeUnit.MILLISECONDS)) {
+            AsyncTarget legacy = of(new Adaptee() {
+                @Override
+                public void speclificRequest() {
+                    try {
+                        Thread.sleep(1_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, stalled);
+            AsyncTarget electric = of(new EMotor(), motors);
+
+            CompletableFuture<?>[] calls = new CompletableFuture<?>[10];
+            for (int i = 0; i < calls.length; i++) {
+                calls[i] = legacy.requestAsync().toCompletableFuture();
+            }
+            electric.requestAsync().toCompletableFuture().join();
+            System.out.println("卡住的后端之外 --> " + motors);
+
+            for (CompletableFuture<?> call : calls) {
+                call.handle((v, e) -> null).join();
+            }
+            Thread.sleep(20);
+            System.out.println("卡住的后端 --> " + stalled);
+        }
+    }
+}
+
+/**
+ * 异步目标接口：Target 的非阻塞版本
+ */
+interface AsyncTarget {
+    CompletionStage<Void> requestAsync();
+}
@@ -0,0 +1,335 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 列式皮包目录
+ *
+ * 桥接模式下每个皮包对象都带一个对象头和一个 Color 引用，几百万个皮包时对象头占了堆的大头。
+ * 列式目录把两个维度都编码成一个字节：包的种类（抽象化角色）存在 kinds 数组，颜色（实现化角色）存在 colors 数组，
+ * 每个皮包只占 2 个字节，没有对象头。颜色按 getColor() 驻留为单例，同一种颜色全目录共用一个 Color 对象；
+ * 包的种类与颜色一样登记在全局表中，除了内置的 handbag、wallet，可以用 registerKind() 登记新的种类和它的工厂。
+ *
+ * 原有的 Bag/Color 接口仍然可用：get(i) 返回一个轻量视图，getName() 每次都从目录读取，
+ * color 字段是取视图时的快照（驻留的单例），通过视图 setColor() 会写回目录并刷新快照，
+ * 但其他途径对目录的修改不会反映到已经取出的视图上，需要最新颜色时用 colorAt(i) 或重新 get(i)；
+ * 需要独立的对象时用 toBag(i)。
+ * 目录本身不是线程安全的，与 ArrayList 一样需要调用方同步。
+ */
+public class BagCatalog {
+
+    /**
+     * 颜色驻留和种类登记共用的锁，两张表都是写时复制，读取不加锁
+     */
+    private static final Object INTERN_LOCK = new Object();
+    private static volatile Color[] interned = {new Yellow(), new Red()};
+    private static volatile BagKind[] registered = {new BagKind("handbag", HandBag::new), new BagKind("wallet", Wallet::new)};
+
+    private byte[] kinds;
+    private byte[] colors;
+    private int size;
+
+    public BagCatalog() {
+        this(16);
+    }
+
+    public BagCatalog(int initialCapacity) {
+        kinds = new byte[Math.max(1, initialCapacity)];
+        colors = new byte[kinds.length];
+    }
+
+    /**
+     * 颜色驻留：同名颜色返回同一个单例，最多 256 种
+     */
+    static Color intern(Color color) {
+        return interned[colorCode(color)];
+    }
+
+    static int colorCode(Color color) {
+        String name = color.getColor();
+        int code = findColorCode(name);
+        if (code >= 0) {
+            return code;
+        }
+        synchronized (INTERN_LOCK) {
+            Color[] table = interned;
+            for (int i = 0; i < table.length; i++) {
+                if (table[i].getColor().equals(name)) {
+                    return i;
+                }
+            }
+            if (table.length == 256) {
+                throw new IllegalStateException("颜色种类超过 256 种: " + name);
+            }
+            Color[] grown = Arrays.copyOf(table, table.length + 1);
+            grown[table.length] = color;
+            interned = grown;
+            return table.length;
+        }
+    }
+
+    /**
+     * 只查找不驻留
+     * @return 颜色编号，未驻留过的颜色返回 -1
+     */
+    static int findColorCode(String name) {
+        Color[] table = interned;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].getColor().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 登记一种包，最多 256 种
+     * @param name 种类名，与该种类 Bag.getName() 的返回值相同
+     * @param factory toBag() 时按颜色创建独立对象的工厂
+     * @return 种类编号
+     */
+    static int registerKind(String name, Function<Color, ? extends Bag> factory) {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(factory, "factory");
+        synchronized (INTERN_LOCK) {
+            BagKind[] table = registered;
+            for (BagKind kind : table) {
+                if (kind.name.equals(name)) {
+                    throw new IllegalArgumentException("包种类已登记: " + name);
+                }
+            }
+            if (table.length == 256) {
+                throw new IllegalStateException("包种类超过 256 种: " + name);
+            }
+            BagKind[] grown = Arrays.copyOf(table, table.length + 1);
+            grown[table.length] = new BagKind(name, factory);
+            registered = grown;
+            return table.length;
+        }
+    }
+
+    static int kindCode(String name) {
+        int code = findKindCode(name);
+        if (code < 0) {
+            throw new IllegalArgumentException("未登记的包种类: " + name);
+        }
+        return code;
+    }
+
+    /**
+     * @return 种类编号，未登记的种类返回 -1
+     */
+    static int findKindCode(String name) {
+        BagKind[] table = registered;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 追加一个皮包
+     * @return 在目录中的下标
+     */
+    public int add(Bag bag) {
+        return add(bag.getName(), bag.color);
+    }
+
+    /**
+     * 按种类名和颜色追加一个皮包
+     */
+    public int add(String kind, Color color) {
+        if (size == kinds.length) {
+            int capacity = kinds.length + (kinds.length >> 1) + 1;
+            kinds = Arrays.copyOf(kinds, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+        kinds[size] = (byte) kindCode(kind);
+        colors[size] = (byte) colorCode(color);
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String nameAt(int index) {
+        return registered[kinds[checkIndex(index)] & 0xFF].name;
+    }
+
+    public Color colorAt(int index) {
+        return interned[colors[checkIndex(index)] & 0xFF];
+    }
+
+    public void setColor(int index, Color color) {
+        colors[checkIndex(index)] = (byte) colorCode(color);
+    }
+
+    /**
+     * 读写目录的 Bag 视图，color 字段是取视图时的快照
+     */
+    public Bag get(int index) {
+        return new BagView(this, checkIndex(index));
+    }
+
+    /**
+     * 复制出一个独立的 HandBag/Wallet 对象
+     */
+    public Bag toBag(int index) {
+        return registered[kinds[checkIndex(index)] & 0xFF].factory.apply(colorAt(index));
+    }
+
+    /**
+     * 按种类和颜色计数，只扫描两个字节数组；只读查询，不会驻留新颜色，未登记的种类或颜色计数为 0
+     */
+    public int count(String kind, Color color) {
+        int kindIndex = findKindCode(kind);
+        int colorIndex = findColorCode(color.getColor());
+        if (kindIndex < 0 || colorIndex < 0) {
+            return 0;
+        }
+        byte kindCode = (byte) kindIndex;
+        byte colorCode = (byte) colorIndex;
+        byte[] k = kinds;
+        byte[] c = colors;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (k[i] == kindCode && c[i] == colorCode) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 一种包：种类名和创建独立对象的工厂
+     */
+    private static final class BagKind {
+        private final String name;
+        private final Function<Color, ? extends Bag> factory;
+
+        BagKind(String name, Function<Color, ? extends Bag> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("下标越界: " + index + ", 大小: " + size);
+        }
+        return index;
+    }
+
+    /**
+     * 两百万个皮包：每个皮包一个对象（各自 new 颜色 / 共用颜色单例）与列式目录的堆占用和扫描耗时对比
+     */
+    public static void main(String[] args) {
+        int bags = 2_000_000;
+        Color yellow = intern(new Yellow());
+        Color red = intern(new Red());
+
+        long before = MicroBenchmark.usedHeap();
+        Bag[] objects = new Bag[bags];
+        for (int i = 0; i < bags; i++) {
+            objects[i] = i % 3 == 0 ? new Wallet(i % 2 == 0 ? new Yellow() : new Red())
+                    : new HandBag(i % 2 == 0 ? new Yellow() : new Red());
+        }
+        MicroBenchmark.sink = objects;
+        long objectBytes = MicroBenchmark.usedHeap() - before;
+
+        before = MicroBenchmark.usedHeap();
+        Bag[] shared = new Bag[bags];
+        for (int i = 0; i < bags; i++) {
+            shared[i] = i % 3 == 0 ? new Wallet(i % 2 == 0 ? yellow : red) : new HandBag(i % 2 == 0 ? yellow : red);
+        }
+        MicroBenchmark.sink = new Object[]{objects, shared};
+        long sharedBytes = MicroBenchmark.usedHeap() - before;
+
+        before = MicroBenchmark.usedHeap();
+        BagCatalog catalog = new BagCatalog(bags);
+        for (Bag bag : objects) {
+            catalog.add(bag);
+        }
+        MicroBenchmark.sink = new Object[]{objects, shared, catalog};
+        long catalogBytes = MicroBenchmark.usedHeap() - before;
+
+        System.out.println(String.format("每包一个对象（各自的颜色） 堆占用 %8d KB", objectBytes / 1024));
+        System.out.println(String.format("每包一个对象（颜色单例）   堆占用 %8d KB", sharedBytes / 1024));
+        System.out.println(String.format("列式目录                   堆占用 %8d KB", catalogBytes / 1024));
+
+        MicroBenchmark.nsPerOp("对象模型扫描黄色挎包", 5, () -> MicroBenchmark.sink = countObjects(objects));
+        MicroBenchmark.nsPerOp("列式目录扫描黄色挎包", 5, () -> MicroBenchmark.sink = catalog.count("handbag", yellow));
+        System.out.println("计数一致 --> " + (countObjects(objects) == catalog.count("handbag", yellow)));
+
+        Bag view = catalog.get(1);
+        view.setColor(new Red());
+        System.out.println("视图 --> " + view.getName() + "," + view.color.getColor()
+                + ", 写回目录 --> " + catalog.colorAt(1).getColor() + ", 颜色单例 --> " + (catalog.colorAt(1) == red));
+
+        //登记表是全局的，同一个 JVM 中再次运行时已经登记过
+        if (findKindCode("backpack") < 0) {
+            registerKind("backpack", Backpack::new);
+        }
+        int backpack = catalog.add("backpack", yellow);
+        System.out.println("新登记的种类 --> " + catalog.nameAt(backpack) + "," + catalog.toBag(backpack).getName());
+        MicroBenchmark.sink = null;
+    }
+
+    private static int countObjects(Bag[] bags) {
+        int count = 0;
+        for (Bag bag : bags) {
+            if ("handbag".equals(bag.getName()) && "yellow".equals(bag.color.getColor())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
+
+/**
+ * 目录中某个皮包的视图：种类名每次从目录读取，color 字段是快照，通过视图修改颜色会写回目录并刷新快照
+ */
+class BagView extends Bag {
+
+    private final BagCatalog catalog;
+    private final int index;
+
+    BagView(BagCatalog catalog, int index) {
+        super(catalog.colorAt(index));
+        this.catalog = catalog;
+        this.index = index;
+    }
+
+    @Override
+    String getName() {
+        return catalog.nameAt(index);
+    }
+
+    @Override
+    public void setColor(Color color) {
+        catalog.setColor(index, color);
+        super.setColor(catalog.colorAt(index));
+    }
+}
+
+/**
+ * 演示 registerKind() 用的第三种包
+ */
+class Backpack extends Bag {
+
+    Backpack(Color color) {
+        super(color);
+    }
+
+    @Override
+    String getName() {
+        return "backpack";
+    }
+}
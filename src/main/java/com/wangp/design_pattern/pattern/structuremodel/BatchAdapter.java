@@ -0,0 +1,208 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 批量适配器
+ *
+ * ObjectAdapter 的 request() 每次只把一个请求转给 Adaptee.speclificRequest()，对支持批量操作的老系统来说，
+ * 每个请求都要付一次调用的固定开销。批量适配器接收一组请求（数组或流），按 groupSize 分组，
+ * 构造时给了批量形式的适配者（BulkAdaptee）时每组只调用一次批量方法，否则退回到逐个调用 speclificRequest()。
+ *
+ * 流按顺序消费，不会一次性读入内存，最多只缓存一组请求。交给批量方法的列表之后不会再被适配器修改，
+ * 适配者可以保留它（例如异步发送）；数组的分组是数组的视图，调用方在适配者用完之前不应修改数组。
+ * @param <R> 请求类型
+ */
+public class BatchAdapter<R> implements Target {
+
+    private final Adaptee adaptee;
+    private final BulkAdaptee<? super R> bulk;
+    private final int groupSize;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder bulkCalls = new LongAdder();
+    private final LongAdder singleCalls = new LongAdder();
+
+    /**
+     * 没有批量方法的适配者，每组逐个调用
+     * @param adaptee 适配者
+     * @param groupSize 每组最多的请求数
+     */
+    public BatchAdapter(Adaptee adaptee, int groupSize) {
+        this(adaptee, null, groupSize);
+    }
+
+    /**
+     * @param adaptee 适配者，单个 request() 仍然转给它
+     * @param bulk 适配者的批量形式，通常与 adaptee 是同一个对象；为 null 时每组逐个调用
+     * @param groupSize 每组最多的请求数
+     */
+    public BatchAdapter(Adaptee adaptee, BulkAdaptee<? super R> bulk, int groupSize) {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("每组请求数必须大于0: " + groupSize);
+        }
+        this.adaptee = adaptee;
+        this.bulk = bulk;
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * 单个请求仍然直接转给适配者
+     */
+    @Override
+    public void request() {
+        singleCalls.increment();
+        adaptee.speclificRequest();
+    }
+
+    /**
+     * 处理一批请求
+     * @return 请求个数
+     */
+    public long requestAll(R[] requests) {
+        for (int from = 0; from < requests.length; from += groupSize) {
+            dispatch(Arrays.asList(requests).subList(from, Math.min(requests.length, from + groupSize)));
+        }
+        return requests.length;
+    }
+
+    /**
+     * 按顺序处理一个请求流
+     * @return 请求个数
+     */
+    public long requestAll(Stream<? extends R> requests) {
+        long count = 0;
+        List<R> group = new ArrayList<>(groupSize);
+        Iterator<? extends R> iterator = requests.iterator();
+        while (iterator.hasNext()) {
+            group.add(iterator.next());
+            count++;
+            if (group.size() == groupSize) {
+                dispatch(group);
+                //已交出的列表归适配者，下一组用新列表
+                group = new ArrayList<>(groupSize);
+            }
+        }
+        if (!group.isEmpty()) {
+            dispatch(group);
+        }
+        return count;
+    }
+
+    private void dispatch(List<R> group) {
+        groups.increment();
+        if (bulk != null) {
+            bulkCalls.increment();
+            bulk.speclificRequests(group);
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            singleCalls.increment();
+            adaptee.speclificRequest();
+        }
+    }
+
+    public long groups() {
+        return groups.sum();
+    }
+
+    public long bulkCalls() {
+        return bulkCalls.sum();
+    }
+
+    public long singleCalls() {
+        return singleCalls.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchAdapter{groupSize=%d, groups=%d, bulkCalls=%d, singleCalls=%d}",
+                groupSize, groups(), bulkCalls(), singleCalls());
+    }
+
+    /**
+     * 每次调用有 20us 固定开销的老系统：逐个 request()、没有批量方法时的退化路径、批量路径的吞吐对比
+     */
+    public static void main(String[] args) {
+        int count = 20_000;
+        Integer[] requests = IntStream.range(0, count).boxed().toArray(Integer[]::new);
+
+        LegacyBackend perItem = new LegacyBackend();
+        ObjectAdapter single = new ObjectAdapter(perItem) {
+            @Override
+            public void request() {
+                perItem.speclificRequest();
+            }
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            single.request();
+        }
+        report("ObjectAdapter 逐个调用", count, System.nanoTime() - start, perItem.calls.sum());
+
+        LegacyBackend fallbackBackend = new LegacyBackend();
+        BatchAdapter<Integer> fallback = new BatchAdapter<>(fallbackBackend, 256);
+        start = System.nanoTime();
+        fallback.requestAll(requests);
+        report("批量适配器（无批量方法）", count, System.nanoTime() - start, fallbackBackend.calls.sum());
+
+        BulkLegacyBackend bulkBackend = new BulkLegacyBackend();
+        BatchAdapter<Integer> batched = new BatchAdapter<>(bulkBackend, bulkBackend, 256);
+        start = System.nanoTime();
+        batched.requestAll(Arrays.stream(requests));
+        report("批量适配器（批量方法）", count, System.nanoTime() - start, bulkBackend.calls.sum());
+        System.out.println(batched);
+    }
+
+    private static void report(String name, int count, long nanos, long backendCalls) {
+        System.out.println(String.format("%-24s %10.0f ops/s, 老系统调用 %d 次", name, count * 1e9 / nanos, backendCalls));
+    }
+}
+
+/**
+ * 适配者的批量形式：一次处理一组请求
+ * @param <R> 请求类型
+ */
+interface BulkAdaptee<R> {
+    void speclificRequests(List<? extends R> requests);
+}
+
+/**
+ * 每次调用都有固定开销（例如一次远程往返）的老系统，演示用
+ */
+class LegacyBackend extends Adaptee {
+
+    static final long CALL_OVERHEAD_NANOS = 20_000;
+
+    final LongAdder calls = new LongAdder();
+
+    @Override
+    public void speclificRequest() {
+        call();
+    }
+
+    void call() {
+        calls.increment();
+        long end = System.nanoTime() + CALL_OVERHEAD_NANOS;
+        while (System.nanoTime() < end) {
+            //模拟一次往返
+        }
+    }
+}
+
+/**
+ * 同时提供批量方法的老系统，一组请求只付一次固定开销
+ */
+class BulkLegacyBackend extends LegacyBackend implements BulkAdaptee<Object> {
+
+    @Override
+    public void speclificRequests(List<?> requests) {
+        call();
+    }
+}
@@ -0,0 +1,303 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.Atomics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量代理
+ *
+ * 代理模式"智能指引"的一种：真实主体批量调用时每次的开销远小于逐个调用，而 show() 是由很多线程一次一次调用的。
+ * 代理把一个时间窗口内的并发调用攒起来，窗口到期或攒够 maxBatchSize 个时一次性交给真实主体的 showAll()，
+ * 然后分别完成每个调用方的 future。
+ *
+ * 第一个进入空批次的调用会安排一次窗口到期时的发送；攒满的批次由凑满它的调用线程直接发送。
+ * 真实主体抛出的异常会传给这一批的所有调用方。
+ * 统计项包括批次数、批大小分布（按 2 的幂分桶）以及调用方因等待攒批而增加的平均和最长延迟。
+ */
+public class BatchingProxy implements Subject {
+
+    /**
+     * 批大小分布的桶数：1, 2-3, 4-7, ... , 2^15 以上
+     */
+    private static final int BUCKETS = 17;
+
+    private final BatchSubject real;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+    private Batch current;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final AtomicLongArray sizeBuckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalDelayNanos = new LongAdder();
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+
+    /**
+     * @param real 支持批量调用的真实主体
+     * @param window 攒批的时间窗口
+     * @param unit 时间单位
+     * @param maxBatchSize 每批最多的调用数
+     * @param scheduler 用来在窗口到期时发送批次
+     */
+    public BatchingProxy(BatchSubject real, long window, TimeUnit unit, int maxBatchSize, ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("每批最多调用数必须大于0: " + maxBatchSize);
+        }
+        this.real = real;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 同步调用，等到所在批次发送完成才返回
+     */
+    @Override
+    public void show() {
+        try {
+            showAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 异步调用，返回的 future 在所在批次发送完成后完成
+     */
+    public CompletableFuture<Void> showAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Batch full = null;
+        Batch opened = null;
+        synchronized (lock) {
+            if (current == null) {
+                current = opened = new Batch();
+            }
+            current.add(future);
+            if (current.size() >= maxBatchSize) {
+                full = current;
+                current = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (opened != null) {
+            Batch batch = opened;
+            try {
+                scheduler.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                abandon(batch, e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 无法安排窗口到期的发送（例如 scheduler 已关闭）：批次不能再留作 current，
+     * 否则后来的调用都会加入它并一直等到攒满；已加入的调用以异常结束
+     */
+    private void abandon(Batch batch, RuntimeException cause) {
+        synchronized (lock) {
+            if (current != batch) {
+                //已经因为攒满被别的调用发送
+                return;
+            }
+            current = null;
+        }
+        for (CompletableFuture<Void> waiting : batch.futures) {
+            waiting.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 窗口到期：批次如果还没有因为攒满被发送，就发送它
+     */
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            if (current != batch) {
+                return;
+            }
+            current = null;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch batch) {
+        long now = System.nanoTime();
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            recordDelay(now - batch.enqueuedAt.get(i));
+        }
+        batches.increment();
+        items.add(size);
+        sizeBuckets.incrementAndGet(Math.min(BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size)));
+        try {
+            real.showAll(size);
+        } catch (Throwable e) {
+            for (CompletableFuture<Void> future : batch.futures) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (CompletableFuture<Void> future : batch.futures) {
+            future.complete(null);
+        }
+    }
+
+    private void recordDelay(long nanos) {
+        totalDelayNanos.add(nanos);
+        Atomics.updateMax(maxDelayNanos, nanos);
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long items() {
+        return items.sum();
+    }
+
+    public double averageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) items.sum() / count;
+    }
+
+    public double averageAddedLatencyNanos() {
+        long count = items.sum();
+        return count == 0 ? 0 : (double) totalDelayNanos.sum() / count;
+    }
+
+    public long maxAddedLatencyNanos() {
+        return maxDelayNanos.get();
+    }
+
+    /**
+     * 批大小分布，下标 i 为大小在 [2^i, 2^(i+1)) 之间的批次数，最后一个桶包含更大的批次
+     */
+    public long[] batchSizeDistribution() {
+        long[] distribution = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            distribution[i] = sizeBuckets.get(i);
+        }
+        return distribution;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder distribution = new StringBuilder();
+        long[] buckets = batchSizeDistribution();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets[i] > 0) {
+                distribution.append(distribution.length() == 0 ? "" : ", ")
+                        .append(i == 0 ? "1" : (1 << i) + "-" + ((1 << (i + 1)) - 1))
+                        .append(':').append(buckets[i]);
+            }
+        }
+        return String.format("BatchingProxy{batches=%d, items=%d, avgBatch=%.1f, avgDelay=%.2fms, maxDelay=%.2fms, sizes=[%s]}",
+                batches(), items(), averageBatchSize(), averageAddedLatencyNanos() / 1e6,
+                maxAddedLatencyNanos() / 1e6, distribution);
+    }
+
+    /**
+     * 一批尚未发送的调用
+     */
+    private static final class Batch {
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private final List<Long> enqueuedAt = new ArrayList<>();
+
+        void add(CompletableFuture<Void> future) {
+            futures.add(future);
+            enqueuedAt.add(System.nanoTime());
+        }
+
+        int size() {
+            return futures.size();
+        }
+    }
+
+    /**
+     * 8 个线程各调用 100 次：直接调用真实主体与经过批量代理的耗时对比
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = 8;
+        int calls = 100;
+        BulkSubject direct = new BulkSubject();
+        long directNanos = run(threads, calls, direct);
+        System.out.println(String.format("直接调用  耗时 %6.1f ms, 真实调用 %d 次", directNanos / 1e6, direct.calls.sum()));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            BulkSubject real = new BulkSubject();
+            BatchingProxy proxy = new BatchingProxy(real, 2, TimeUnit.MILLISECONDS, 32, scheduler);
+            long batchedNanos = run(threads, calls, proxy);
+            System.out.println(String.format("批量代理  耗时 %6.1f ms, 真实调用 %d 次", batchedNanos / 1e6, real.calls.sum()));
+            System.out.println(proxy);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static long run(int threads, int calls, Subject subject) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < calls; i++) {
+                    subject.show();
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+}
+
+/**
+ * 支持批量调用的主体，逐个调用等价于批大小为 1 的批量调用
+ */
+interface BatchSubject extends Subject {
+
+    /**
+     * 一次完成 count 次 show()
+     */
+    void showAll(int count);
+
+    @Override
+    default void show() {
+        showAll(1);
+    }
+}
+
+/**
+ * 每次调用都有 1ms 的固定开销（例如一次网络往返），且同一时刻只能处理一个调用
+ */
+class BulkSubject implements BatchSubject {
+
+    final LongAdder calls = new LongAdder();
+
+    @Override
+    public synchronized void showAll(int count) {
+        calls.increment();
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -52,7 +52,10 @@ class ConcreteImplementor implements Implementor{
  *    抽象化角色
  */
 abstract class Abstraction{
-    Implementor implementor;
+    /**
+     * 运行时可能被其他线程替换，volatile 保证读者看到完整发布的实现；需要灰度替换时使用 SwappableImplementor
+     */
+    volatile Implementor implementor;
     Abstraction(Implementor implementor){
         this.implementor = implementor;
     }
@@ -111,7 +114,10 @@ class Red implements Color{
 }
 
 abstract class Bag{
-    Color color;
+    /**
+     * setColor() 可能与其他线程的读取并发，volatile 保证读者看到完整发布的颜色
+     */
+    volatile Color color;
     Bag(Color color){
         this.color = color;
     }
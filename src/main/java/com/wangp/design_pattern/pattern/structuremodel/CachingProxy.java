@@ -0,0 +1,284 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存代理
+ *
+ * 代理模式"智能指引"的一种：放在开销大的真实主体前面，按"方法 + 参数"缓存返回值，相同的调用直接返回缓存结果。
+ * 适用于任意接口，由 JDK 动态代理生成代理对象；返回 void 的方法没有可缓存的结果，直接转发给真实主体。
+ *
+ * 缓存项有存活时间（TTL），超过最大条数时按 CLOCK（近似 LRU）淘汰：查找走 ConcurrentHashMap，命中不加锁，
+ * 只在缓存项上打一个访问标记；淘汰顺序单独保存在一个队列里，只有放入新项时加锁维护，
+ * 队首的项被访问过就清除标记放回队尾，没有被访问过才淘汰。
+ * 同一个键的多个并发未命中只会触发一次真实调用（single-flight），其余调用等待这次调用的结果；
+ * 真实调用抛出的异常会原样抛给所有等待者，且不会被缓存。
+ * @param <T> 被代理的接口
+ */
+public class CachingProxy<T> implements InvocationHandler {
+
+    private final T target;
+    private final T proxy;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, CacheEntry> cache = new ConcurrentHashMap<>();
+    /**
+     * 淘汰顺序，由自身加锁保护；已过期、加载失败的项不会立即从中移除，轮到时跳过
+     */
+    private final ArrayDeque<CacheEntry> order = new ArrayDeque<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param type 被代理的接口
+     * @param target 真实主体
+     * @param ttl 缓存项存活时间
+     * @param unit 时间单位
+     * @param maxSize 最大缓存条数
+     */
+    public CachingProxy(Class<T> type, T target, long ttl, TimeUnit unit, int maxSize) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException("只能代理接口: " + type.getName());
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("最大缓存条数必须大于0: " + maxSize);
+        }
+        this.target = target;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxSize = maxSize;
+        this.proxy = type.cast(java.lang.reflect.Proxy.newProxyInstance(
+                type.getClassLoader(), new Class<?>[]{type}, this));
+    }
+
+    /**
+     * 代理对象，调用方通过它访问真实主体
+     */
+    public T proxy() {
+        return proxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class || method.getReturnType() == void.class) {
+            return invokeTarget(method, args);
+        }
+        Key key = new Key(method, args);
+        while (true) {
+            long now = System.nanoTime();
+            CacheEntry entry = cache.get(key);
+            if (entry != null && now - entry.expiresAt >= 0) {
+                if (cache.remove(key, entry)) {
+                    expirations.increment();
+                }
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+                entry.touch();
+                return await(entry.value);
+            }
+            CacheEntry created = new CacheEntry(key, new CompletableFuture<>(), now + ttlNanos);
+            if (cache.putIfAbsent(key, created) != null) {
+                //另一个线程刚放入同一个键，重新查找，等待它的结果
+                continue;
+            }
+            misses.increment();
+            admit(created);
+            try {
+                created.value.complete(invokeTarget(method, args));
+            } catch (Throwable e) {
+                //先移除再完成，之后的调用不会拿到这次的异常
+                cache.remove(key, created);
+                created.value.completeExceptionally(e);
+            }
+            return await(created.value);
+        }
+    }
+
+    /**
+     * 新项排到队尾，缓存超过最大条数时从队首开始淘汰；
+     * 队列里失效的项超过 maxSize 个时也顺带清理，队列长度不会随过期和重新加载无限增长
+     */
+    private void admit(CacheEntry entry) {
+        synchronized (order) {
+            order.addLast(entry);
+            while (order.size() > maxSize) {
+                boolean full = cache.size() > maxSize;
+                if (!full && order.size() <= 2 * maxSize) {
+                    return;
+                }
+                CacheEntry head = order.pollFirst();
+                if (cache.get(head.key) != head) {
+                    continue;
+                }
+                if (full && !head.referenced) {
+                    if (cache.remove(head.key, head)) {
+                        evictions.increment();
+                    }
+                    continue;
+                }
+                head.referenced = false;
+                order.addLast(head);
+            }
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> result) throws Throwable {
+        try {
+            return result.get();
+        } catch (ExecutionException | CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long expirations() {
+        return expirations.sum();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingProxy{size=%d, hits=%d, misses=%d, evictions=%d, expirations=%d}",
+                size(), hits(), misses(), evictions(), expirations());
+    }
+
+    /**
+     * 缓存键：方法 + 参数
+     */
+    private static final class Key {
+        private final Method method;
+        private final Object[] args;
+        private final int hash;
+
+        Key(Method method, Object[] args) {
+            this.method = method;
+            this.args = args == null ? new Object[0] : args.clone();
+            this.hash = 31 * method.hashCode() + Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final Key key;
+        private final CompletableFuture<Object> value;
+        private final long expiresAt;
+        /**
+         * 上次轮到淘汰之后是否被访问过
+         */
+        private volatile boolean referenced;
+
+        CacheEntry(Key key, CompletableFuture<Object> value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        void touch() {
+            //已经标记过时不再写，避免多个线程反复写同一个缓存行
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ExpensiveQuery real = new ExpensiveQuery();
+        CachingProxy<QuerySubject> caching = new CachingProxy<>(QuerySubject.class, real, 200, TimeUnit.MILLISECONDS, 2);
+        QuerySubject subject = caching.proxy();
+
+        //8 个线程同时查询同一个键，只触发一次真实调用
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            new Thread(() -> {
+                subject.query("a");
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        System.out.println("并发未命中后真实调用次数 --> " + real.calls.get());
+
+        subject.query("b");
+        subject.query("c");
+        subject.query("a");
+        Thread.sleep(250);
+        subject.query("c");
+        System.out.println(caching + ", 真实调用次数 --> " + real.calls.get());
+    }
+}
+
+/**
+ * 有返回值的主体接口
+ */
+interface QuerySubject {
+    String query(String key);
+}
+
+class ExpensiveQuery implements QuerySubject {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public String query(String key) {
+        calls.incrementAndGet();
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "result-" + key;
+    }
+}
@@ -0,0 +1,218 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可热替换的实现化角色引用
+ *
+ * 桥接模式中抽象化角色持有的实现化对象会在运行时被替换，而其他线程正在通过它访问。
+ * 这里按 RCU（read-copy-update）的方式发布：当前状态是一个不可变对象，放在 AtomicReference 中，
+ * 读取只是一次 volatile 读，永远不会阻塞；替换时新建一个状态对象整体 CAS 进去，
+ * 正在使用旧实现的读者照常用完旧实现，旧状态没有读者引用后自然被回收。
+ *
+ * 支持灰度发布：stage() 先把一定百分比的调用分给新实现，逐步调高比例后 promote() 全量切换，
+ * 出问题时 rollback() 立即全部回到原实现。
+ * @param <T> 实现化角色类型
+ */
+public final class HotSwap<T> {
+
+    private final AtomicReference<State<T>> state;
+
+    public HotSwap(T initial) {
+        state = new AtomicReference<>(new State<>(requireNonNull(initial), null, 0));
+    }
+
+    /**
+     * 按当前灰度比例随机选择一个实现
+     */
+    public T current() {
+        State<T> s = state.get();
+        if (s.candidate == null) {
+            return s.stable;
+        }
+        return ThreadLocalRandom.current().nextInt(100) < s.percent ? s.candidate : s.stable;
+    }
+
+    /**
+     * 按键选择实现，同一个键在比例不变时总是落在同一边，适合按用户或会话灰度
+     */
+    public T current(Object key) {
+        State<T> s = state.get();
+        if (s.candidate == null) {
+            return s.stable;
+        }
+        int bucket = Math.floorMod(key.hashCode() * 0x9E3779B9, 100);
+        return bucket < s.percent ? s.candidate : s.stable;
+    }
+
+    /**
+     * 立即全量替换，取消正在进行的灰度
+     */
+    public void swap(T replacement) {
+        state.set(new State<>(requireNonNull(replacement), null, 0));
+    }
+
+    /**
+     * 开始或调整灰度：percent% 的调用交给 candidate
+     * @param percent 0 到 100
+     */
+    public void stage(T candidate, int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("灰度比例必须在 0 到 100 之间: " + percent);
+        }
+        requireNonNull(candidate);
+        state.updateAndGet(s -> new State<>(s.stable, candidate, percent));
+    }
+
+    /**
+     * 灰度中的新实现转为全量
+     */
+    public void promote() {
+        state.updateAndGet(s -> s.candidate == null ? s : new State<>(s.candidate, null, 0));
+    }
+
+    /**
+     * 放弃灰度，全部回到原实现
+     */
+    public void rollback() {
+        state.updateAndGet(s -> s.candidate == null ? s : new State<>(s.stable, null, 0));
+    }
+
+    public T stable() {
+        return state.get().stable;
+    }
+
+    public int rolloutPercent() {
+        State<T> s = state.get();
+        return s.candidate == null ? 0 : s.percent;
+    }
+
+    private static <T> T requireNonNull(T implementor) {
+        if (implementor == null) {
+            throw new IllegalArgumentException("实现不能为空");
+        }
+        return implementor;
+    }
+
+    /**
+     * 不可变状态：原实现、灰度中的新实现和灰度比例
+     */
+    private static final class State<T> {
+        private final T stable;
+        private final T candidate;
+        private final int percent;
+
+        State(T stable, T candidate, int percent) {
+            this.stable = stable;
+            this.candidate = candidate;
+            this.percent = percent;
+        }
+    }
+
+    /**
+     * 读吞吐：无并发替换、后台线程不停灰度和切换时的 HotSwap，对比每次读取都加锁的写法
+     */
+    public static void main(String[] args) throws InterruptedException {
+        CountingImplementor blue = new CountingImplementor();
+        CountingImplementor green = new CountingImplementor();
+        SwappableImplementor swappable = new SwappableImplementor(blue);
+        LockedImplementor locked = new LockedImplementor(blue);
+        Abstraction abstraction = new RefinedAbstraction(swappable) {
+            @Override
+            void Operation() {
+                implementor.OperationImpl();
+            }
+        };
+
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        long ops = 20_000_000;
+        MicroBenchmark.throughput("HotSwap 无替换", threads, ops, abstraction::Operation);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder swaps = new LongAdder();
+        Thread swapper = new Thread(() -> {
+            int step = 0;
+            while (running.get()) {
+                step++;
+                swappable.hotSwap().stage(green, step % 101);
+                locked.set(step % 2 == 0 ? blue : green);
+                if (step % 101 == 100) {
+                    swappable.hotSwap().promote();
+                    swappable.hotSwap().swap(blue);
+                }
+                swaps.increment();
+                Thread.yield();
+            }
+        });
+        swapper.start();
+        MicroBenchmark.throughput("HotSwap 并发灰度/替换", threads, ops, abstraction::Operation);
+        MicroBenchmark.throughput("synchronized 并发替换", threads, ops, locked::OperationImpl);
+        running.set(false);
+        swapper.join();
+        System.out.println(String.format("替换 %d 次, blue 调用 %d, green 调用 %d", swaps.sum(), blue.calls.sum(), green.calls.sum()));
+    }
+}
+
+/**
+ * 可热替换的实现化角色：每次调用时从 HotSwap 取当前实现
+ */
+class SwappableImplementor implements Implementor {
+
+    private final HotSwap<Implementor> hotSwap;
+
+    SwappableImplementor(Implementor initial) {
+        this.hotSwap = new HotSwap<>(initial);
+    }
+
+    HotSwap<Implementor> hotSwap() {
+        return hotSwap;
+    }
+
+    @Override
+    public void OperationImpl() {
+        hotSwap.current().OperationImpl();
+    }
+}
+
+/**
+ * 读写都加锁的写法，用于对比
+ */
+class LockedImplementor implements Implementor {
+
+    private Implementor implementor;
+
+    LockedImplementor(Implementor implementor) {
+        this.implementor = implementor;
+    }
+
+    synchronized void set(Implementor implementor) {
+        this.implementor = implementor;
+    }
+
+    synchronized Implementor get() {
+        return implementor;
+    }
+
+    @Override
+    public void OperationImpl() {
+        get().OperationImpl();
+    }
+}
+
+/**
+ * 只计数不打印的具体实现化角色
+ */
+class CountingImplementor implements Implementor {
+
+    final LongAdder calls = new LongAdder();
+
+    @Override
+    public void OperationImpl() {
+        calls.increment();
+    }
+}
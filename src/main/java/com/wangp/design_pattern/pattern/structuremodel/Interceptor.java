@@ -0,0 +1,31 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+/**
+ * 拦截器
+ *
+ * 相当于 Proxy 中手写的 preShow()/postShow()：在 invocation.proceed() 之前做的就是"访问真实主体之前"，
+ * 之后做的就是"访问真实主体之后"。多个拦截器按顺序组成链，由 ProxyGenerator 套在任意接口外面。
+ */
+@FunctionalInterface
+public interface Interceptor {
+
+    /**
+     * @param invocation 当前调用，调用 proceed() 交给链上的下一个拦截器，最后到达真实主体
+     * @return 调用结果
+     */
+    Object intercept(Invocation invocation) throws Throwable;
+
+    /**
+     * 前后各执行一段逻辑的拦截器
+     */
+    static Interceptor around(Runnable before, Runnable after) {
+        return invocation -> {
+            before.run();
+            try {
+                return invocation.proceed();
+            } finally {
+                after.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.lang.reflect.Method;
+
+/**
+ * 一次经过拦截器链的接口调用
+ *
+ * 每次调用新建一个，不是线程安全的，也不能在调用结束后再 proceed()。
+ */
+public final class Invocation {
+
+    private final Object target;
+    private final Method method;
+    private final Object[] args;
+    private final Interceptor[] chain;
+    private final ProxyGenerator.Invoker invoker;
+    private int index;
+
+    Invocation(Object target, Method method, Object[] args, Interceptor[] chain, ProxyGenerator.Invoker invoker) {
+        this.target = target;
+        this.method = method;
+        this.args = args;
+        this.chain = chain;
+        this.invoker = invoker;
+    }
+
+    public Object target() {
+        return target;
+    }
+
+    public Method method() {
+        return method;
+    }
+
+    /**
+     * 调用参数，无参方法返回空数组；拦截器可以在 proceed() 之前修改其中的元素
+     */
+    public Object[] args() {
+        return args;
+    }
+
+    /**
+     * 交给链上的下一个拦截器，全部拦截器都已经过时调用真实主体
+     */
+    public Object proceed() throws Throwable {
+        if (index < chain.length) {
+            return chain[index++].intercept(this);
+        }
+        return invoker.invoke(target, args);
+    }
+}
@@ -0,0 +1,106 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.Atomics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图
+ *
+ * 按对数分桶记录纳秒级延迟：每个 2 的幂区间再均分成 16 个子桶，相对误差不超过 1/16。
+ * 记录时对所在桶做一次 AtomicLongArray 自增，次数与总和累加到 LongAdder（按线程分散，不争同一个缓存行），
+ * 最大值只有在超过当前值时才 CAS，通常只是一次读；多个线程同时记录不需要加锁。
+ * 读取百分位时对各桶做一次快照，与并发记录之间不保证严格一致，用于监控足够。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        Atomics.updateMax(max, value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶内取值的上界，作为落在该桶的延迟的估计值
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double mean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 到 100 之间的百分位
+     * @return 该百分位的延迟估计值，没有记录时返回 0
+     */
+    public long percentile(double percentile) {
+        return percentiles(percentile)[0];
+    }
+
+    /**
+     * 一次快照计算多个百分位
+     */
+    public long[] percentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long[] result = new long[percentiles.length];
+        if (count == 0) {
+            return result;
+        }
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    result[p] = Math.min(upperBoundOf(i), max.get());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
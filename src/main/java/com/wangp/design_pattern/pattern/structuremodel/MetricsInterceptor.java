@@ -0,0 +1,247 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 监控拦截器
+ *
+ * 套在 Subject、Target、Motor、Strategy、Command 等任意模式接口外面，按方法记录调用次数、异常次数和延迟直方图，
+ * 可以随时 dump() 出百分位表，也可以定期导出。同一个 MetricsInterceptor 可以同时用于多个接口，统计按方法区分。
+ *
+ * 关闭时开销接近于零：instrument() 在关闭状态下直接返回真实主体，不生成代理。
+ * 已经生成的代理在运行时关闭后不再计时和计数，但每次调用仍要经过 JDK 动态代理、参数数组和 Invocation，
+ * 比直接调用多一二十纳秒（见 main() 中"运行时关闭监控"一项）；需要完全去掉这部分开销时应重新 instrument()。
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<Method, MethodMetrics> metrics = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    public MetricsInterceptor(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 给真实主体套上监控代理，关闭状态下原样返回真实主体
+     * @param type 被监控的接口，可以是其他包中的包级接口
+     * @param target 真实主体
+     */
+    public <T> T instrument(Class<T> type, T target) {
+        if (!enabled) {
+            return target;
+        }
+        return ProxyGenerator.compiled(type, target, this);
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!enabled) {
+            return invocation.proceed();
+        }
+        //先无锁 get，只有第一次调用才走 computeIfAbsent：Java 8 的 computeIfAbsent 即使键已存在也会锁住所在的桶
+        MethodMetrics method = metrics.get(invocation.method());
+        if (method == null) {
+            method = metrics.computeIfAbsent(invocation.method(), MethodMetrics::new);
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            method.errors.increment();
+            throw e;
+        } finally {
+            method.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 单个方法的统计快照
+     */
+    public static final class Snapshot {
+        private final String method;
+        private final long calls;
+        private final long errors;
+        private final double meanNanos;
+        private final long[] percentileNanos;
+        private final long maxNanos;
+
+        Snapshot(String method, long calls, long errors, double meanNanos, long[] percentileNanos, long maxNanos) {
+            this.method = method;
+            this.calls = calls;
+            this.errors = errors;
+            this.meanNanos = meanNanos;
+            this.percentileNanos = percentileNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return percentileNanos[0];
+        }
+
+        public long getP90Nanos() {
+            return percentileNanos[1];
+        }
+
+        public long getP99Nanos() {
+            return percentileNanos[2];
+        }
+
+        public long getP999Nanos() {
+            return percentileNanos[3];
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-32s calls=%-8d errors=%-4d mean=%9.2fus p50=%9.2fus p90=%9.2fus p99=%9.2fus p99.9=%9.2fus max=%9.2fus",
+                    method, calls, errors, meanNanos / 1e3, getP50Nanos() / 1e3, getP90Nanos() / 1e3,
+                    getP99Nanos() / 1e3, getP999Nanos() / 1e3, maxNanos / 1e3);
+        }
+    }
+
+    /**
+     * 当前所有方法的统计快照，按方法名排序
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (MethodMetrics method : metrics.values()) {
+            LatencyHistogram latency = method.latency;
+            snapshots.add(new Snapshot(method.name, latency.count(), method.errors.sum(), latency.mean(),
+                    latency.percentiles(PERCENTILES), latency.max()));
+        }
+        snapshots.sort(Comparator.comparing(Snapshot::getMethod));
+        return snapshots;
+    }
+
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Snapshot snapshot : snapshot()) {
+            out.append(snapshot).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    /**
+     * 定期导出统计快照
+     * @param scheduler 执行导出的线程池
+     * @param period 导出间隔
+     * @param unit 时间单位
+     * @param exporter 接收快照的一方，例如写日志或推送到监控系统
+     * @return 取消导出时使用
+     */
+    public ScheduledFuture<?> scheduleExport(ScheduledExecutorService scheduler, long period, TimeUnit unit,
+                                             Consumer<? super List<Snapshot>> exporter) {
+        return scheduler.scheduleAtFixedRate(() -> exporter.accept(snapshot()), period, period, unit);
+    }
+
+    /**
+     * 清空已有的统计
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    private static final class MethodMetrics {
+        private final String name;
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        MethodMetrics(Method method) {
+            this.name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        }
+    }
+
+    /**
+     * 监控 Subject、Target、Motor 三种接口；开启监控的 show() 与关闭时的单次调用开销对比
+     */
+    public static void main(String[] args) {
+        MetricsInterceptor metrics = new MetricsInterceptor(true);
+        Subject subject = metrics.instrument(Subject.class, new QuietSubject());
+        Target target = metrics.instrument(Target.class, () -> {
+            if (Math.random() < 0.01) {
+                throw new IllegalStateException("请求失败");
+            }
+        });
+        Motor motor = metrics.instrument(Motor.class, () -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ScheduledFuture<?> export = metrics.scheduleExport(scheduler, 100, TimeUnit.MILLISECONDS,
+                    snapshots -> System.out.println("定期导出 --> " + snapshots.size() + " 个方法"));
+            for (int i = 0; i < 200; i++) {
+                subject.show();
+                try {
+                    target.request();
+                } catch (IllegalStateException e) {
+                    //计入 errors
+                }
+                motor.driver();
+            }
+            export.cancel(false);
+        } finally {
+            scheduler.shutdown();
+        }
+        System.out.print(metrics.dump());
+
+        long ops = 20_000_000;
+        QuietSubject real = new QuietSubject();
+        MetricsInterceptor on = new MetricsInterceptor(true);
+        MetricsInterceptor off = new MetricsInterceptor(false);
+        Subject enabled = on.instrument(Subject.class, real);
+        Subject runtimeDisabled = on.instrument(Subject.class, real);
+        Subject disabled = off.instrument(Subject.class, real);
+        MicroBenchmark.nsPerOp("直接调用", ops, real::show);
+        MicroBenchmark.nsPerOp("关闭监控（未生成代理）", ops, disabled::show);
+        MicroBenchmark.nsPerOp("开启监控", ops, enabled::show);
+        on.setEnabled(false);
+        MicroBenchmark.nsPerOp("运行时关闭监控", ops, runtimeDisabled::show);
+    }
+}
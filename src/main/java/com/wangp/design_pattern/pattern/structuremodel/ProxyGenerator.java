@@ -0,0 +1,282 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 动态代理生成器
+ *
+ * Proxy 的 preShow()/postShow() 是针对 Subject 一个接口手写的。这里给任意接口套上一条有序的拦截器链，提供三种代理：
+ * 1.reflective：JDK 动态代理，每次通过 Method.invoke() 反射调用真实主体；
+ * 2.compiled：JDK 动态代理，创建代理时把每个接口方法预先绑定成 MethodHandle，调用时不再经过反射的访问检查和参数包装；
+ * 3.generated：不经过 JDK 动态代理，由 LambdaMetafactory 生成一个直接实现接口的类，接口方法直接调用拦截器链，
+ *   省去 InvocationHandler 的 Method 查找和参数数组。与 AdapterFactory 一样只适用于单个抽象方法、参数不超过三个的接口，
+ *   其他接口退回 compiled；生成类的默认方法不经过拦截器，equals/hashCode/toString 按生成对象自身的身份。
+ * 拦截器链为空时直接返回真实主体本身，不产生任何额外开销。
+ *
+ * 非公有接口（包括其他包中的包级接口）同样可以用 JDK 动态代理的两种方式代理，接口方法会被设置为可访问；
+ * generated 需要从本类能够访问目标接口，否则同样退回 compiled。
+ */
+public final class ProxyGenerator {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private ProxyGenerator() {
+    }
+
+    /**
+     * 真实主体的调用方式
+     */
+    interface Invoker {
+        Object invoke(Object target, Object[] args) throws Throwable;
+    }
+
+    /**
+     * 反射调用真实主体的代理
+     */
+    public static <T> T reflective(Class<T> type, T target, Interceptor... chain) {
+        return create(type, target, chain, ProxyGenerator::reflectiveInvoker);
+    }
+
+    /**
+     * 通过预绑定的 MethodHandle 调用真实主体的代理
+     */
+    public static <T> T compiled(Class<T> type, T target, Interceptor... chain) {
+        return create(type, target, chain, ProxyGenerator::methodHandleInvoker);
+    }
+
+    /**
+     * 由 LambdaMetafactory 生成实现类的代理，接口不适用时退回 compiled
+     */
+    public static <T> T generated(Class<T> type, T target, Interceptor... chain) {
+        checkArguments(type, target);
+        Interceptor[] interceptors = chain.clone();
+        if (interceptors.length == 0) {
+            return target;
+        }
+        Method method = singleAbstractMethod(type);
+        if (method == null || method.getParameterCount() > 3) {
+            return create(type, target, interceptors, ProxyGenerator::methodHandleInvoker);
+        }
+        Dispatcher dispatcher = new Dispatcher(target, method, interceptors, methodHandleInvoker(method));
+        MethodType samType = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        Object proxy;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle implementation = lookup.findVirtual(Dispatcher.class, "call" + method.getParameterCount(),
+                    MethodType.genericMethodType(method.getParameterCount()));
+            CallSite site = LambdaMetafactory.metafactory(lookup, method.getName(),
+                    MethodType.methodType(type, Dispatcher.class), samType, implementation, samType);
+            proxy = site.getTarget().invoke(dispatcher);
+        } catch (Throwable e) {
+            //目标接口对本类不可访问等情况，改用 JDK 动态代理
+            return create(type, target, interceptors, ProxyGenerator::methodHandleInvoker);
+        }
+        return type.cast(proxy);
+    }
+
+    /**
+     * @return 接口唯一的抽象方法，有多个抽象方法时返回 null
+     */
+    private static Method singleAbstractMethod(Class<?> type) {
+        List<Method> abstractMethods = new ArrayList<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                abstractMethods.add(method);
+            }
+        }
+        return abstractMethods.size() == 1 ? abstractMethods.get(0) : null;
+    }
+
+    /**
+     * 生成类捕获的调度器：接口方法转到对应参数个数的 callN，每次调用新建一个 Invocation 走拦截器链
+     */
+    static final class Dispatcher {
+        private final Object target;
+        private final Method method;
+        private final Interceptor[] chain;
+        private final Invoker invoker;
+
+        Dispatcher(Object target, Method method, Interceptor[] chain, Invoker invoker) {
+            this.target = target;
+            this.method = method;
+            this.chain = chain;
+            this.invoker = invoker;
+        }
+
+        Object call0() throws Throwable {
+            return new Invocation(target, method, NO_ARGS, chain, invoker).proceed();
+        }
+
+        Object call1(Object a) throws Throwable {
+            return new Invocation(target, method, new Object[]{a}, chain, invoker).proceed();
+        }
+
+        Object call2(Object a, Object b) throws Throwable {
+            return new Invocation(target, method, new Object[]{a, b}, chain, invoker).proceed();
+        }
+
+        Object call3(Object a, Object b, Object c) throws Throwable {
+            return new Invocation(target, method, new Object[]{a, b, c}, chain, invoker).proceed();
+        }
+    }
+
+    private static void checkArguments(Class<?> type, Object target) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException("只能代理接口: " + type.getName());
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("真实主体不能为空");
+        }
+    }
+
+    private static <T> T create(Class<T> type, T target, Interceptor[] chain, Function<Method, Invoker> invokerFactory) {
+        checkArguments(type, target);
+        Interceptor[] interceptors = chain.clone();
+        if (interceptors.length == 0) {
+            return target;
+        }
+        Map<Method, Invoker> invokers = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            invokers.put(method, invokerFactory.apply(method));
+        }
+        InvocationHandler handler = (proxy, method, args) -> {
+            Invoker invoker = invokers.get(method);
+            if (invoker == null) {
+                return invokeObjectMethod(proxy, target, method, args);
+            }
+            return new Invocation(target, method, args == null ? NO_ARGS : args, interceptors, invoker).proceed();
+        };
+        return type.cast(java.lang.reflect.Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * equals/hashCode 按代理对象自身的身份，toString 交给真实主体，均不经过拦截器
+     */
+    private static Object invokeObjectMethod(Object proxy, Object target, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return target.toString();
+        }
+    }
+
+    private static void makeAccessible(Method method) {
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            //无法设置时按原有访问权限调用
+        }
+    }
+
+    static Invoker reflectiveInvoker(Method method) {
+        makeAccessible(method);
+        return (target, args) -> {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * 三个参数以内按参数个数直接 invokeExact，避免展开参数数组的开销
+     */
+    static Invoker methodHandleInvoker(Method method) {
+        makeAccessible(method);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("无法访问接口方法: " + method, e);
+        }
+        int arity = method.getParameterCount();
+        MethodHandle exact = handle.asType(MethodType.genericMethodType(arity + 1));
+        switch (arity) {
+            case 0:
+                return (target, args) -> (Object) exact.invokeExact(target);
+            case 1:
+                return (target, args) -> (Object) exact.invokeExact(target, args[0]);
+            case 2:
+                return (target, args) -> (Object) exact.invokeExact(target, args[0], args[1]);
+            case 3:
+                return (target, args) -> (Object) exact.invokeExact(target, args[0], args[1], args[2]);
+            default:
+                MethodHandle spread = handle.asSpreader(Object[].class, arity)
+                        .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                return (target, args) -> (Object) spread.invokeExact(target, args);
+        }
+    }
+
+    private static long before;
+    private static long after;
+
+    /**
+     * 单次调用开销对比：直接调用、手写 Proxy、反射动态代理、MethodHandle 动态代理、LambdaMetafactory 生成类。
+     * 各代理都执行一前一后两段计数逻辑，真实主体不打印
+     */
+    public static void main(String[] args) {
+        Subject real = new QuietSubject();
+        Proxy handWritten = new Proxy() {
+            @Override
+            public void preShow() {
+                before++;
+            }
+
+            @Override
+            public void postShow() {
+                after++;
+            }
+        };
+        handWritten.proxy = real;
+        Interceptor counting = Interceptor.around(() -> before++, () -> after++);
+        Subject reflective = reflective(Subject.class, real, counting);
+        Subject compiled = compiled(Subject.class, real, counting);
+        Subject generated = generated(Subject.class, real, counting);
+        System.out.println("生成类 --> " + generated.getClass().getName()
+                + ", 是否 JDK 动态代理 --> " + java.lang.reflect.Proxy.isProxyClass(generated.getClass()));
+
+        long ops = 20_000_000;
+        MicroBenchmark.nsPerOp("直接调用", ops, real::show);
+        MicroBenchmark.nsPerOp("手写 Proxy", ops, handWritten::show);
+        MicroBenchmark.nsPerOp("JDK 动态代理 + Method.invoke", ops, reflective::show);
+        MicroBenchmark.nsPerOp("JDK 动态代理 + MethodHandle", ops, compiled::show);
+        MicroBenchmark.nsPerOp("LambdaMetafactory 生成类", ops, generated::show);
+        System.out.println("拦截次数 --> " + before + "/" + after);
+    }
+}
+
+/**
+ * 不打印的真实主体，用于测量代理本身的开销
+ */
+class QuietSubject implements Subject {
+
+    private long shows;
+
+    @Override
+    public void show() {
+        shows++;
+    }
+
+    long shows() {
+        return shows;
+    }
+}
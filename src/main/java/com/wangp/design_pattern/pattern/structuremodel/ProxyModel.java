@@ -1,5 +1,13 @@
 package com.wangp.design_pattern.pattern.structuremodel;
 
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 /**
  * 代理模式
  *
@@ -29,6 +37,45 @@ package com.wangp.design_pattern.pattern.structuremodel;
  * 5.延迟加载，指为了提高系统的性能，延迟对目标的加载。例如，Hibernate 中就存在属性的延迟加载和关联表的延时加载。
  */
 public class ProxyModel {
+
+    private static final int PROXIES = 100_000;
+
+    /**
+     * 十万个代理：创建时就持有真实主体的 Proxy 与延迟创建真实主体的虚拟代理，对比启动耗时和堆占用，
+     * 两边都计入代理对象本身，只有 1% 的虚拟代理被真正访问
+     */
+    public static void main(String[] args) {
+        long before = MicroBenchmark.usedHeap();
+        long start = System.nanoTime();
+        Proxy[] eager = new Proxy[PROXIES];
+        for (int i = 0; i < PROXIES; i++) {
+            Proxy proxy = new Proxy();
+            proxy.proxy = new HeavySubject();
+            eager[i] = proxy;
+        }
+        long eagerNanos = System.nanoTime() - start;
+        //放到静态字段里，保证测量堆占用时数组仍然可达
+        MicroBenchmark.sink = eager;
+        long eagerBytes = MicroBenchmark.usedHeap() - before;
+        MicroBenchmark.sink = null;
+
+        before = MicroBenchmark.usedHeap();
+        start = System.nanoTime();
+        VirtualProxy[] lazy = new VirtualProxy[PROXIES];
+        for (int i = 0; i < PROXIES; i++) {
+            lazy[i] = new VirtualProxy(HeavySubject::new);
+        }
+        long lazyNanos = System.nanoTime() - start;
+        for (int i = 0; i < PROXIES; i += 100) {
+            lazy[i].subject();
+        }
+        MicroBenchmark.sink = lazy;
+        long lazyBytes = MicroBenchmark.usedHeap() - before;
+        MicroBenchmark.sink = null;
+
+        System.out.println(String.format("立即代理  耗时 %6.1f ms, 堆占用 %8d KB", eagerNanos / 1e6, eagerBytes / 1024));
+        System.out.println(String.format("虚拟代理  耗时 %6.1f ms, 堆占用 %8d KB（已访问 1%%）", lazyNanos / 1e6, lazyBytes / 1024));
+    }
 }
 
 //通过接口或抽象类声明真实主题和代理对象实现的业务方法。
@@ -63,4 +110,125 @@ class Proxy implements Subject{
     public void postShow(){
         System.out.println("访问真实主体之后");
     }
-}
\ No newline at end of file
+}
+
+/**
+ * 虚拟代理：
+ * 真实主体在第一次被访问时才创建，双重检查保证并发访问时只创建一次。
+ * 如果提供了线程池，调用方预计很快要访问时可以先调用 prefetch()，真实主体在后台创建，
+ * 之后的访问直接使用（或等待）后台创建的结果。
+ */
+class VirtualProxy implements Subject{
+
+    private final Supplier<? extends Subject> factory;
+    private final Executor prefetchExecutor;
+    private volatile Subject real;
+    private CompletableFuture<Subject> prefetching;
+
+    VirtualProxy(){
+        this(RealSubject::new);
+    }
+
+    VirtualProxy(Supplier<? extends Subject> factory){
+        this(factory, null);
+    }
+
+    /**
+     * @param factory 真实主体的创建方法
+     * @param prefetchExecutor 后台预创建使用的线程池，为 null 时 prefetch() 不起作用
+     */
+    VirtualProxy(Supplier<? extends Subject> factory, Executor prefetchExecutor){
+        this.factory = factory;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * 与 Proxy 一样在访问真实主体前后执行 preShow()/postShow()
+     */
+    @Override
+    public void show() {
+        Subject subject = subject();
+        preShow();
+        subject.show();
+        postShow();
+    }
+
+    public void preShow(){
+        System.out.println("访问真实主体之前");
+    }
+
+    public void postShow(){
+        System.out.println("访问真实主体之后");
+    }
+
+    /**
+     * 提示即将访问，在后台提前创建真实主体
+     */
+    public void prefetch(){
+        if (real != null || prefetchExecutor == null) {
+            return;
+        }
+        synchronized (this) {
+            if (real == null && prefetching == null) {
+                prefetching = CompletableFuture.supplyAsync(factory::get, prefetchExecutor);
+            }
+        }
+    }
+
+    public boolean isInitialized(){
+        return real != null;
+    }
+
+    Subject subject(){
+        Subject subject = real;
+        if (subject == null) {
+            synchronized (this) {
+                subject = real;
+                if (subject == null) {
+                    subject = awaitPrefetch();
+                    if (subject == null) {
+                        subject = factory.get();
+                    }
+                    real = subject;
+                }
+            }
+        }
+        return subject;
+    }
+
+    /**
+     * 取后台预创建的结果；预创建失败时返回 null，由调用方在当前线程重新创建，
+     * 失败的预创建不会被保留，也不会把 CompletionException 抛给调用方
+     */
+    private Subject awaitPrefetch(){
+        CompletableFuture<Subject> pending = prefetching;
+        prefetching = null;
+        if (pending == null) {
+            return null;
+        }
+        try {
+            return pending.join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+}
+
+/**
+ * 创建开销较大的真实主体，演示用
+ */
+class HeavySubject implements Subject{
+
+    private final long[] state = new long[128];
+
+    HeavySubject(){
+        for (int i = 0; i < state.length; i++) {
+            state[i] = i * 31L;
+        }
+    }
+
+    @Override
+    public void show() {
+        System.out.println("Heavy Subject starting " + state.length);
+    }
+}
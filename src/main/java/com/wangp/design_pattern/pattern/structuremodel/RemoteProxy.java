@@ -0,0 +1,440 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 远程代理
+ *
+ * 真实主体运行在另一个本地进程中，代理通过回环地址上的一条 TCP 连接访问它。
+ * 与一次调用一个阻塞往返不同，多个调用可以同时在途（pipelining）：每个请求带一个 id，
+ * 后台读线程收到响应后按 id 找到对应的 future 并完成它，所以多个线程可以共用同一条连接（multiplexing）。
+ *
+ * 帧格式（大端）：
+ * 请求：int 长度 | long id | byte 操作码
+ * 响应：int 长度 | long id | byte 状态 | 状态为失败时附带 UTF-8 错误信息
+ * 长度不包含自身的 4 个字节。
+ *
+ * 写请求不单独开线程：调用方把 id 放进队列，抢到写权限的线程把队列中积攒的请求一次写出，
+ * 并发越高每次系统调用写出的请求越多。
+ */
+public class RemoteProxy implements Subject, AutoCloseable {
+
+    static final byte OP_SHOW = 1;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final int REQUEST_LENGTH = 8 + 1;
+    /**
+     * 响应帧头：long id + byte 状态
+     */
+    static final int RESPONSE_HEADER = 8 + 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Map<Long, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private final Queue<Long> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final AtomicLong nextId = new AtomicLong();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread reader;
+    private volatile boolean closed;
+
+    /**
+     * @param address 远程真实主体的地址
+     */
+    public RemoteProxy(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        reader = new Thread(this::readLoop, "remote-proxy-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 阻塞调用，等到远程调用完成才返回
+     */
+    @Override
+    public void show() {
+        try {
+            showAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 发出请求后立即返回，响应到达后 future 完成
+     */
+    public CompletableFuture<Void> showAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("连接已关闭"));
+            return future;
+        }
+        long id = nextId.incrementAndGet();
+        inFlight.put(id, future);
+        //放入之前连接可能刚好中断，fail() 已经清理过 inFlight，这里自己清理
+        if (closed) {
+            inFlight.remove(id);
+            future.completeExceptionally(new IllegalStateException("连接已关闭"));
+            return future;
+        }
+        outbound.add(id);
+        flush();
+        return future;
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * 抢到写权限的线程写出队列中的全部请求；放弃写权限后再检查一次队列，避免请求滞留
+     */
+    private void flush() {
+        while (!outbound.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                Long id;
+                while ((id = outbound.poll()) != null) {
+                    writeBuffer.putInt(REQUEST_LENGTH).putLong(id).put(OP_SHOW);
+                    if (writeBuffer.remaining() < 4 + REQUEST_LENGTH) {
+                        writeFully();
+                    }
+                }
+                writeFully();
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+    private void writeFully() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void readLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            while (!closed) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("远程主体关闭了连接");
+                }
+                buffer.flip();
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt(buffer.position());
+                    //超过缓冲区的帧永远读不完，长度不足的帧无法解析，都视为连接出错
+                    if (length < RESPONSE_HEADER || length > buffer.capacity() - 4) {
+                        throw new IOException("非法的响应帧长度: " + length);
+                    }
+                    if (buffer.remaining() < 4 + length) {
+                        break;
+                    }
+                    buffer.getInt();
+                    long id = buffer.getLong();
+                    byte status = buffer.get();
+                    byte[] payload = new byte[length - RESPONSE_HEADER];
+                    buffer.get(payload);
+                    CompletableFuture<Void> future = inFlight.remove(id);
+                    if (future == null) {
+                        continue;
+                    }
+                    if (status == STATUS_OK) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(new IllegalStateException(
+                                "远程调用失败: " + new String(payload, StandardCharsets.UTF_8)));
+                    }
+                }
+                buffer.compact();
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 连接出错后关闭连接，所有在途调用都以异常结束
+     */
+    private void fail(Throwable cause) {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+        IllegalStateException error = new IllegalStateException("远程连接中断", cause);
+        for (Long id : inFlight.keySet()) {
+            CompletableFuture<Void> future = inFlight.remove(id);
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        fail(new EOFException("代理已关闭"));
+    }
+
+    /**
+     * 本地替身服务端上的吞吐和延迟：逐个阻塞往返、单线程流水线、多线程共用一条连接
+     */
+    public static void main(String[] args) throws Exception {
+        try (RemoteSubjectServer server = new RemoteSubjectServer(new QuietSubject());
+             RemoteProxy proxy = new RemoteProxy(server.address())) {
+            int calls = 20_000;
+            LatencyHistogram roundTrips = new LatencyHistogram();
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                long begin = System.nanoTime();
+                proxy.show();
+                roundTrips.record(System.nanoTime() - begin);
+            }
+            report("逐个阻塞往返", calls, System.nanoTime() - start, roundTrips);
+
+            int pipelined = 200_000;
+            Semaphore window = new Semaphore(512);
+            LatencyHistogram latencies = new LatencyHistogram();
+            start = System.nanoTime();
+            for (int i = 0; i < pipelined; i++) {
+                window.acquire();
+                long begin = System.nanoTime();
+                proxy.showAsync().whenComplete((v, e) -> {
+                    latencies.record(System.nanoTime() - begin);
+                    window.release();
+                });
+            }
+            window.acquire(512);
+            window.release(512);
+            report("流水线（512 在途）", pipelined, System.nanoTime() - start, latencies);
+
+            int threads = 4;
+            LatencyHistogram shared = new LatencyHistogram();
+            CountDownLatch done = new CountDownLatch(threads);
+            start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    for (int i = 0; i < calls; i++) {
+                        long begin = System.nanoTime();
+                        proxy.show();
+                        shared.record(System.nanoTime() - begin);
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            report(threads + " 线程共用连接", threads * calls, System.nanoTime() - start, shared);
+        }
+    }
+
+    private static void report(String name, long calls, long nanos, LatencyHistogram latency) {
+        long[] p = latency.percentiles(50, 99);
+        System.out.println(String.format("%-20s %10.0f ops/s  p50 %8.2f us  p99 %8.2f us",
+                name, calls * 1e9 / nanos, p[0] / 1e3, p[1] / 1e3));
+    }
+}
+
+/**
+ * 远程真实主体的本地替身服务端
+ *
+ * 单线程 NIO 事件循环，监听回环地址上的随机端口。每次读到数据就处理其中所有完整的请求帧，
+ * 响应写入该连接的输出缓冲区后一次写出；写不完时关注 OP_WRITE，等可写时继续。
+ */
+class RemoteSubjectServer implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Subject real;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread loop;
+    private volatile boolean closed;
+
+    RemoteSubjectServer(Subject real) throws IOException {
+        this.real = real;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        loop = new Thread(this::eventLoop, "remote-subject-server");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    InetSocketAddress address() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    private void eventLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                throw new IllegalStateException("服务端事件循环异常", e);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * 由事件循环线程在退出时关闭所有连接，避免与 select() 并发关闭选择器
+     */
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                //继续关闭其他连接
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            //已经在退出
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = server.accept();
+        if (client == null) {
+            return;
+        }
+        client.configureBlocking(false);
+        client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        client.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer in = connection.in;
+        if (client.read(in) < 0) {
+            key.cancel();
+            client.close();
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < RemoteProxy.REQUEST_LENGTH || length > in.capacity() - 4) {
+                throw new IOException("非法的请求帧长度: " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            in.getInt();
+            long id = in.getLong();
+            byte op = in.get();
+            in.position(in.position() + length - RemoteProxy.REQUEST_LENGTH);
+            connection.respond(id, handle(op));
+        }
+        in.compact();
+        write(key);
+    }
+
+    /**
+     * @return 成功时返回 null，否则返回错误信息
+     */
+    private String handle(byte op) {
+        if (op != RemoteProxy.OP_SHOW) {
+            return "未知操作码: " + op;
+        }
+        try {
+            real.show();
+            return null;
+        } catch (RuntimeException e) {
+            return String.valueOf(e.getMessage());
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        ByteBuffer out = ((Connection) key.attachment()).out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        out.compact();
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 每个连接的输入输出缓冲区，输出缓冲区不够时按需扩容
+     */
+    private static final class Connection {
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+
+        void respond(long id, String error) {
+            byte[] payload = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+            int length = 8 + 1 + payload.length;
+            if (out.remaining() < 4 + length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + 4 + length));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+            out.putInt(length).putLong(id).put(error == null ? RemoteProxy.STATUS_OK : RemoteProxy.STATUS_ERROR).put(payload);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.wangp.design_pattern.pattern.structuremodel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 零拷贝适配器
+ *
+ * 被适配的后端有的用 byte[] 接口，有的用 ByteBuffer/FileChannel 接口，常见的适配写法是新建一个缓冲区再把数据复制过去。
+ * 这里的两个适配器都不复制数据，只做视图转换：
+ * 1.ZeroCopyAdapter：byte[] 接口 --> 通道。ByteBuffer.wrap() 直接以数组为底层创建视图；
+ *   多段数据用 GatheringByteChannel 一次写出（gather），读入多个数组用 ScatteringByteChannel（scatter）；
+ * 2.ByteArrayChannel：通道接口 --> byte[] 后端。堆缓冲区直接把底层数组连同偏移交给后端；
+ *   直接缓冲区没有底层数组，只能复制到一个复用的数组中，这部分计入复制字节数。
+ * 每个适配器都带一个 CopyMeter，统计调用次数和适配层复制的字节数，热路径上应当保持为 0。
+ * 注意：JDK 把堆缓冲区写入文件时内部仍会经过临时直接缓冲区，这不属于适配层的复制，不计入统计。
+ */
+public class ZeroCopyAdapter implements ByteArrayTarget {
+
+    private final WritableByteChannel channel;
+    private final CopyMeter meter = new CopyMeter();
+
+    /**
+     * @param channel 基于通道的后端，例如 FileChannel、SocketChannel
+     */
+    public ZeroCopyAdapter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer view = ByteBuffer.wrap(data, offset, length);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+        meter.record(0);
+    }
+
+    /**
+     * 多段数据一次写出，例如报文头和报文体；通道不支持 gather 时逐段写出
+     */
+    public void writeAll(byte[]... chunks) throws IOException {
+        ByteBuffer[] views = new ByteBuffer[chunks.length];
+        long total = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            views[i] = ByteBuffer.wrap(chunks[i]);
+            total += chunks[i].length;
+        }
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            while (total > 0) {
+                total -= gathering.write(views);
+            }
+        } else {
+            for (ByteBuffer view : views) {
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+        }
+        meter.record(0);
+    }
+
+    /**
+     * 从通道依次读满多个数组（scatter）
+     * @return 读到的字节数，通道已到末尾时可能小于数组总长度
+     */
+    public static long readAll(ScatteringByteChannel channel, byte[]... into) throws IOException {
+        ByteBuffer[] views = new ByteBuffer[into.length];
+        long remaining = 0;
+        for (int i = 0; i < into.length; i++) {
+            views[i] = ByteBuffer.wrap(into[i]);
+            remaining += into[i].length;
+        }
+        long read = 0;
+        while (read < remaining) {
+            long n = channel.read(views);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    public CopyMeter meter() {
+        return meter;
+    }
+
+    /**
+     * 64KB 数据写入文件：零拷贝适配与先复制再写出的常见写法对比，以及 gather/scatter 和反方向适配的复制统计
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("zero-copy", ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            byte[] payload = new byte[64 * 1024];
+            int writes = 4096;
+
+            ZeroCopyAdapter zeroCopy = new ZeroCopyAdapter(channel);
+            CopyingAdapter copying = new CopyingAdapter(channel);
+            for (int round = 0; round < 3; round++) {
+                report("复制后写出", copying.meter, writes, time(channel, writes, () -> copying.write(payload, 0, payload.length)));
+                report("零拷贝适配", zeroCopy.meter, writes, time(channel, writes, () -> zeroCopy.write(payload, 0, payload.length)));
+            }
+
+            channel.truncate(0);
+            byte[] header = "HEAD".getBytes(StandardCharsets.UTF_8);
+            byte[] body = "BODY-BODY".getBytes(StandardCharsets.UTF_8);
+            zeroCopy.writeAll(header, body);
+            byte[] readHeader = new byte[header.length];
+            byte[] readBody = new byte[body.length];
+            channel.position(0);
+            readAll(channel, readHeader, readBody);
+            System.out.println("gather 写出、scatter 读回 --> " + new String(readHeader, StandardCharsets.UTF_8)
+                    + " | " + new String(readBody, StandardCharsets.UTF_8));
+
+            LegacyByteArrayBackend legacy = new LegacyByteArrayBackend();
+            ByteArrayChannel reverse = new ByteArrayChannel(legacy);
+            reverse.write(ByteBuffer.wrap(payload));
+            System.out.println("堆缓冲区写入 byte[] 后端 --> " + reverse.meter());
+            ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+            reverse.write(direct);
+            System.out.println("直接缓冲区写入 byte[] 后端 --> " + reverse.meter() + ", 后端收到 " + legacy.received + " 字节");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static long time(FileChannel channel, int writes, IoAction write) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            if (i % 256 == 0) {
+                channel.position(0);
+            }
+            write.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, CopyMeter meter, int writes, long nanos) {
+        System.out.println(String.format("%-10s %8.1f MB/s  %s", name, writes * 64.0 / 1024 * 1e9 / nanos, meter));
+    }
+}
+
+/**
+ * 基于 byte[] 的目标接口
+ */
+interface ByteArrayTarget {
+    void write(byte[] data, int offset, int length) throws IOException;
+}
+
+/**
+ * 反方向的适配器：把基于 byte[] 的后端包装成 WritableByteChannel
+ */
+class ByteArrayChannel implements WritableByteChannel {
+
+    private final ByteArrayTarget target;
+    private final CopyMeter meter = new CopyMeter();
+    private byte[] scratch = new byte[0];
+    private boolean open = true;
+
+    ByteArrayChannel(ByteArrayTarget target) {
+        this.target = target;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (src.hasArray()) {
+            target.write(src.array(), src.arrayOffset() + src.position(), length);
+            src.position(src.limit());
+            meter.record(0);
+        } else {
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            src.get(scratch, 0, length);
+            target.write(scratch, 0, length);
+            meter.record(length);
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    CopyMeter meter() {
+        return meter;
+    }
+}
+
+/**
+ * 适配层复制字节数的统计
+ */
+final class CopyMeter {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+
+    void record(long copied) {
+        calls.increment();
+        bytesCopied.add(copied);
+    }
+
+    long calls() {
+        return calls.sum();
+    }
+
+    long bytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    double bytesCopiedPerCall() {
+        long count = calls.sum();
+        return count == 0 ? 0 : (double) bytesCopied.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d, bytesCopied=%d, perCall=%.0f", calls(), bytesCopied(), bytesCopiedPerCall());
+    }
+}
+
+/**
+ * 常见写法：新建缓冲区，复制数据后再写出，用于对比
+ */
+class CopyingAdapter implements ByteArrayTarget {
+
+    private final WritableByteChannel channel;
+    final CopyMeter meter = new CopyMeter();
+
+    CopyingAdapter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(data, offset, length);
+        copy.flip();
+        while (copy.hasRemaining()) {
+            channel.write(copy);
+        }
+        meter.record(length);
+    }
+}
+
+/**
+ * 基于 byte[] 的老后端，演示用
+ */
+class LegacyByteArrayBackend implements ByteArrayTarget {
+
+    long received;
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        received += length;
+    }
+}
@@ -0,0 +1,67 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import com.wangp.design_pattern.pattern.MicroBenchmark;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+public class BuilderModelTest {
+
+    @Test
+    public void frozenProductRoleHasOnlyFinalFields() {
+        assertTrue(Modifier.isFinal(FrozenProductRole.class.getModifiers()));
+        for (Field field : FrozenProductRole.class.getDeclaredFields()) {
+            assertTrue(field.getName(), Modifier.isFinal(field.getModifiers()));
+        }
+    }
+
+    @Test
+    public void constructFrozenReturnsIndependentSnapshots() {
+        ConcreteBuilder builder = new ConcreteBuilder();
+        Director director = new Director(builder);
+        FrozenProductRole first = director.constructFrozen();
+        FrozenProductRole second = director.constructFrozen();
+        assertNotSame(first, second);
+        assertEquals(first.getPartA(), second.getPartA());
+
+        builder.reset();
+        assertNull(builder.getResult().getPartA());
+        assertEquals("建造partA...", first.getPartA());
+        assertEquals("建造partC...", first.getPartC());
+    }
+
+    @Test
+    public void builderPoolAllocatesOnlyTheSnapshot() {
+        com.sun.management.ThreadMXBean threads = BuilderModel.allocationCounter();
+        assumeNotNull(threads);
+        long threadId = Thread.currentThread().getId();
+        BuilderPool pool = new BuilderPool(ConcreteBuilder::new, 8);
+        int ops = 200_000;
+        long fresh = 0;
+        long pooled = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ops; i++) {
+                MicroBenchmark.sink = new Director(new ConcreteBuilder()).constructFrozen();
+            }
+            fresh = (threads.getThreadAllocatedBytes(threadId) - before) / ops;
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ops; i++) {
+                MicroBenchmark.sink = pool.constructFrozen();
+            }
+            pooled = (threads.getThreadAllocatedBytes(threadId) - before) / ops;
+        }
+        MicroBenchmark.sink = null;
+        //快照是一个对象头加三个引用，压缩指针下 24 字节，不开压缩指针时 40 字节
+        assertTrue("建造者池每次建造分配 " + pooled + " 字节", pooled <= 40);
+        assertTrue("新建建造者 " + fresh + " 字节, 建造者池 " + pooled + " 字节", pooled < fresh);
+    }
+}
@@ -0,0 +1,60 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CowPrototypeTest {
+
+    @Test
+    public void writeToCloneDoesNotChangePrototype() {
+        CowRealizeType prototype = new CowRealizeType(16);
+        prototype.setValue(0, 1);
+        prototype.setAttribute("color", "red");
+
+        CowRealizeType copy = prototype.cowClone();
+        copy.setValue(0, 2);
+        copy.setAttribute("color", "blue");
+
+        assertEquals(1, prototype.getValue(0));
+        assertEquals("red", prototype.getAttribute("color"));
+        assertEquals(2, copy.getValue(0));
+        assertEquals("blue", copy.getAttribute("color"));
+    }
+
+    @Test
+    public void writeToPrototypeDoesNotChangeClone() {
+        CowRealizeType prototype = new CowRealizeType(16);
+        CowRealizeType copy = prototype.cowClone();
+        prototype.setValue(3, 7);
+        prototype.setAttribute("size", "L");
+
+        assertEquals(0, copy.getValue(3));
+        assertNull(copy.getAttribute("size"));
+    }
+
+    @Test
+    public void clonesOfClonesStayIndependent() {
+        CowRealizeType prototype = new CowRealizeType(4);
+        CowRealizeType first = prototype.cowClone();
+        CowRealizeType second = first.cowClone();
+        second.setValue(1, 5);
+        first.setValue(1, 6);
+
+        assertEquals(0, prototype.getValue(1));
+        assertEquals(6, first.getValue(1));
+        assertEquals(5, second.getValue(1));
+    }
+
+    @Test
+    public void detachedCloneIsIndependent() {
+        CowRealizeType prototype = new CowRealizeType(4);
+        CowRealizeType copy = prototype.cowClone().detach();
+        prototype.setValue(2, 9);
+        copy.setAttribute("k", "v");
+
+        assertEquals(0, copy.getValue(2));
+        assertNull(prototype.getAttribute("k"));
+    }
+}
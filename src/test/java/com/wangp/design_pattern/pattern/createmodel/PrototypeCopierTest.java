@@ -0,0 +1,61 @@
+package com.wangp.design_pattern.pattern.createmodel;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrototypeCopierTest {
+
+    static class Shipment {
+        LocalDate shipDate = LocalDate.of(2024, 5, 1);
+        Instant createdAt = Instant.ofEpochSecond(1_700_000_000L);
+        Duration window = Duration.ofHours(6);
+        ZoneId zone = ZoneId.of("Asia/Shanghai");
+        UUID id = UUID.randomUUID();
+        URI tracking = URI.create("https://example.com/track/1");
+        Pattern code = Pattern.compile("[A-Z]{2}\\d+");
+        Optional<List<String>> labels = Optional.of(new ArrayList<>());
+    }
+
+    @Test
+    public void immutableJdkValuesAreShared() {
+        Shipment prototype = new Shipment();
+
+        Shipment copy = PrototypeCopier.copy(prototype);
+
+        assertNotSame(prototype, copy);
+        assertSame(prototype.shipDate, copy.shipDate);
+        assertSame(prototype.createdAt, copy.createdAt);
+        assertSame(prototype.window, copy.window);
+        assertSame(prototype.zone, copy.zone);
+        assertSame(prototype.id, copy.id);
+        assertSame(prototype.tracking, copy.tracking);
+        assertSame(prototype.code, copy.code);
+    }
+
+    @Test
+    public void optionalContentIsDeepCopied() {
+        Shipment prototype = new Shipment();
+
+        Shipment copy = PrototypeCopier.copy(prototype);
+        copy.labels.get().add("fragile");
+
+        assertNotSame(prototype.labels.get(), copy.labels.get());
+        assertTrue(prototype.labels.get().isEmpty());
+        assertEquals(1, copy.labels.get().size());
+    }
+}